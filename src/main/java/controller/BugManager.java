@@ -1,11 +1,14 @@
 package controller;
 
+import git.GitAnalyzer;
 import model.Bug;
 import model.GitCommit;
 
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.regex.Pattern;
 
 public class BugManager {
 
@@ -16,22 +19,37 @@ public class BugManager {
      * If the commit contains the ticket (retrieved by Jira) of the bug, and if the fix date
      * of Jira corresponds to the date of the commit, then the commit is classified as the fix commit of the bug.
      * Otherwise, the commit is classified as 'otherCommit'.
+     * Commits are first indexed by the ticket keys found in their messages, so that each bug is linked
+     * with a single hash lookup instead of scanning all the commits.
      *
      * @param bugs    list of bugs
      * @param commits list of commits
      */
     public static void setFixCommitAndOtherCommits(List<Bug> bugs, List<GitCommit> commits) {
-        String commitDate;
+        Set<String> projectKeys = new HashSet<>();
         for (Bug bug : bugs) {
-            for (GitCommit commit : commits) {
-                if (commit.getMsg().contains(bug.getTicket().getKey())) {
-                    commitDate = commit.getDate();
-                    if (commitDate.equals(bug.getFixDate())) {
-                        bug.setFixCommit(commit);
-                    } else {
-                        // classify this commit as other commit
-                        bug.addOtherCommit(commit);
-                    }
+            projectKeys.add(GitAnalyzer.getProjectKey(bug.getTicket().getKey()));
+        }
+        Pattern ticketKeyPattern = GitAnalyzer.compileTicketKeyPattern(projectKeys);
+
+        Map<String, List<GitCommit>> commitsByTicket = new HashMap<>();
+        for (GitCommit commit : commits) {
+            for (String key : GitAnalyzer.extractTicketKeys(commit.getMsg(), ticketKeyPattern)) {
+                commitsByTicket.computeIfAbsent(key, k -> new ArrayList<>()).add(commit);
+            }
+        }
+
+        for (Bug bug : bugs) {
+            List<GitCommit> linkedCommits = commitsByTicket.get(bug.getTicket().getKey());
+            if (linkedCommits == null)
+                continue;
+            long fixDay = bug.getFixDate() == null ? Long.MIN_VALUE : LocalDate.parse(bug.getFixDate()).toEpochDay();
+            for (GitCommit commit : linkedCommits) {
+                if (epochDayOf(commit) == fixDay) {
+                    bug.setFixCommit(commit);
+                } else {
+                    // classify this commit as other commit
+                    bug.addOtherCommit(commit);
                 }
             }
         }
@@ -49,16 +67,18 @@ public class BugManager {
 
     public static void patchFixCommit(List<Bug> bugs) {
         removeBugsWithNoCommits(bugs);
-        List<Bug> bugsToBeRemoved = new ArrayList<>();
+        Set<Bug> bugsToBeRemoved = new HashSet<>();
         for (Bug bug : bugs) {
             if (bug.getFixCommit() == null) {
                 // get the other commit with last date
                 GitCommit candidateFix = null;
+                long candidateDay = Long.MIN_VALUE;
                 List<GitCommit> others = bug.getOtherCommits();
                 for (GitCommit com : others) {
-                    LocalDate comDate = LocalDate.parse(com.getDate());
-                    if (candidateFix == null || comDate.isAfter(LocalDate.parse(candidateFix.getDate()))) {
+                    long comDay = epochDayOf(com);
+                    if (candidateFix == null || comDay > candidateDay) {
                         candidateFix = com;
+                        candidateDay = comDay;
                     }
                 }
                 if (candidateFix == null)
@@ -71,10 +91,19 @@ public class BugManager {
         removeBugs(bugs, bugsToBeRemoved);
     }
 
-    private static void removeBugs(List<Bug> bugs, List<Bug> toRemove){
-        for(Bug bug: toRemove){
-            bugs.remove(bug);
-        }
+    private static void removeBugs(List<Bug> bugs, Set<Bug> toRemove){
+        if (!toRemove.isEmpty())
+            bugs.removeIf(toRemove::contains);
+    }
+
+    /**
+     * @return the day of the commit, in the local time zone (the same of its 'yyyy-MM-dd' date), as days from the epoch
+     */
+    private static long epochDayOf(GitCommit commit) {
+        return Instant.ofEpochSecond(commit.getRevCommit().getCommitTime())
+                .atZone(ZoneId.systemDefault())
+                .toLocalDate()
+                .toEpochDay();
     }
 
     public static void sortBugsChronologically (List<Bug> bugs){
@@ -0,0 +1,68 @@
+package controller;
+
+import model.Bug;
+import model.GitCommit;
+import model.ReleaseTimeline;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.*;
+
+/**
+ * Immutable reverse index from the id of a commit to the bugs it refers to (as fix commit or as other commit),
+ * together with the union of the affected versions of those bugs, expressed as ids of the release timeline.
+ * It is built once from the refined list of bugs, so that labeling a modified file costs a single hash lookup.
+ */
+public final class CommitBugIndex {
+
+    private static final Labels NO_LABELS = new Labels(Collections.emptyList(), new int[0]);
+
+    private final Map<ObjectId, Labels> labelsByCommit;
+
+    /**
+     * Bugs referred by a commit and the sorted ids of the versions affected by at least one of them.
+     */
+    public record Labels(List<Bug> bugs, int[] affectedVersionIds) {
+    }
+
+    public CommitBugIndex(List<Bug> bugs, ReleaseTimeline timeline) {
+        Map<ObjectId, Set<Bug>> bugsByCommit = new HashMap<>();
+        for (Bug bug : bugs) {
+            if (bug.getFixCommit() != null)
+                addBug(bugsByCommit, bug.getFixCommit(), bug);
+            if (bug.getOtherCommits() != null) {
+                for (GitCommit other : bug.getOtherCommits()) {
+                    addBug(bugsByCommit, other, bug);
+                }
+            }
+        }
+
+        Map<ObjectId, Labels> index = new HashMap<>(bugsByCommit.size() * 2);
+        for (Map.Entry<ObjectId, Set<Bug>> entry : bugsByCommit.entrySet()) {
+            BitSet affected = new BitSet(timeline.size());
+            for (Bug bug : entry.getValue()) {
+                if (bug.getAffectedVersions() == null)
+                    continue;
+                for (String version : bug.getAffectedVersions()) {
+                    int id = timeline.idOf(version);
+                    if (id >= 0)
+                        affected.set(id);
+                }
+            }
+            index.put(entry.getKey(), new Labels(List.copyOf(entry.getValue()), affected.stream().toArray()));
+        }
+        this.labelsByCommit = Collections.unmodifiableMap(index);
+    }
+
+    private static void addBug(Map<ObjectId, Set<Bug>> bugsByCommit, GitCommit commit, Bug bug) {
+        bugsByCommit.computeIfAbsent(commit.getRevCommit().copy(), k -> new LinkedHashSet<>()).add(bug);
+    }
+
+    /**
+     * @param commit the id of a commit
+     * @return the bugs referred by the commit and their affected versions; empty labels if the commit refers no bug
+     */
+    public Labels labelsOf(AnyObjectId commit) {
+        return labelsByCommit.getOrDefault(commit, NO_LABELS);
+    }
+}
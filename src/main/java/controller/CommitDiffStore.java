@@ -0,0 +1,258 @@
+package controller;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent store of the diffs of the commits, with the lines added and deleted in each changed file.
+ * With the diffs of the history already analyzed, the dataset can be rebuilt (e.g. because the bugs, and so
+ * the labels, have changed) applying the stored changes again, without any access to the repository:
+ * only the new commits have to be diffed.
+ * <p>
+ * The file is an append-only log of records: the header holds a digest of the settings the diffs depend on
+ * (diff mode, path filter), and the store is emptied if they change. New diffs are kept in memory until
+ * {@link #flush()}, that appends them to the file; a record truncated by a crash is dropped when loading.
+ * Only the position of each record is kept in memory: the diffs are read from the file when looked up,
+ * so the heap used by the store does not grow with the stored history.
+ * <p>
+ * Record layout: previous commit id, commit id, length of the body, body (number of files and their entries).
+ */
+public class CommitDiffStore implements Closeable {
+
+    private static final int MAGIC = 0x43445354; // "CDST"
+    private static final int FORMAT_VERSION = 2;
+    private static final int ID_SIZE = 20;
+    private static final int RECORD_HEADER_SIZE = 2 * ID_SIZE + 4;
+
+    private record Key(ObjectId previous, ObjectId commit) {
+    }
+
+    // position and length of the body of a stored record
+    private record Location(long offset, int length) {
+    }
+
+    private final Path file;
+    private final ObjectId settings;
+    private final Map<Key, Location> index = new ConcurrentHashMap<>();
+    private final Map<Key, List<DiffPrefetcher.FileDiff>> pending = new ConcurrentHashMap<>();
+    // length of the valid part of the file, or -1 if the file has to be rewritten from the header
+    private long validLength = -1;
+    private FileChannel reader;
+
+    /**
+     * @param file     the file of the store; if it does not exist (or its settings are different) it is created at the first flush
+     * @param settings digest of the settings the diffs depend on
+     */
+    public CommitDiffStore(Path file, ObjectId settings) {
+        this.file = file;
+        this.settings = settings;
+        load();
+    }
+
+    /**
+     * @param previous the commit the commit has been compared to, or null if it has been compared to its parents
+     *                 or to the empty tree
+     * @return the stored changed files of the commit, or null if they are not stored
+     */
+    public List<DiffPrefetcher.FileDiff> lookup(AnyObjectId previous, AnyObjectId commit) throws IOException {
+        Key key = key(previous, commit);
+        List<DiffPrefetcher.FileDiff> files = pending.get(key);
+        if (files != null)
+            return files;
+        Location location = index.get(key);
+        if (location == null)
+            return null;
+        ByteBuffer body = ByteBuffer.allocate(location.length());
+        // positional reads do not move the channel, so lookups can run in parallel
+        FileChannel channel = reader();
+        while (body.hasRemaining()) {
+            if (channel.read(body, location.offset() + body.position()) < 0)
+                throw new EOFException("Truncated record in " + file);
+        }
+        return readBody(new DataInputStream(new ByteArrayInputStream(body.array())));
+    }
+
+    public void put(AnyObjectId previous, AnyObjectId commit, List<DiffPrefetcher.FileDiff> files) {
+        Key key = key(previous, commit);
+        if (!index.containsKey(key))
+            pending.putIfAbsent(key, files);
+    }
+
+    public int size() {
+        return index.size() + pending.size();
+    }
+
+    /**
+     * Appends the diffs added since the previous flush to the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty() && validLength >= 0)
+            return;
+        Map<Key, List<DiffPrefetcher.FileDiff>> added = Map.copyOf(pending);
+        Map<Key, Location> written = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // drop the part of the file that is not valid, e.g. a record truncated by a crash
+            long position = Math.max(validLength, 0);
+            channel.truncate(position);
+            channel.position(position);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            if (validLength < 0) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeId(out, settings);
+                position += 8 + ID_SIZE;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            for (Map.Entry<Key, List<DiffPrefetcher.FileDiff>> entry : added.entrySet()) {
+                body.reset();
+                writeBody(new DataOutputStream(body), entry.getValue());
+                writeId(out, entry.getKey().previous());
+                writeId(out, entry.getKey().commit());
+                out.writeInt(body.size());
+                body.writeTo(out);
+                written.put(entry.getKey(), new Location(position + RECORD_HEADER_SIZE, body.size()));
+                position += RECORD_HEADER_SIZE + body.size();
+            }
+            out.flush();
+            channel.force(false);
+            validLength = channel.position();
+        }
+        // the flushed diffs are now read from the file
+        index.putAll(written);
+        for (Key key : added.keySet()) {
+            pending.remove(key, added.get(key));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (reader != null)
+            reader.close();
+        reader = null;
+    }
+
+    private synchronized FileChannel reader() throws IOException {
+        if (reader == null)
+            reader = FileChannel.open(file, StandardOpenOption.READ);
+        return reader;
+    }
+
+    /**
+     * Indexes the complete records of the file, reading only their headers.
+     */
+    private void load() {
+        if (!Files.isRegularFile(file))
+            return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            if (!readFully(channel, header.limit(8 + ID_SIZE), 0) || header.getInt(0) != MAGIC
+                    || header.getInt(4) != FORMAT_VERSION || !ObjectId.fromRaw(header.array(), 8).equals(settings))
+                // diffs computed with other settings: the file will be overwritten at the first flush
+                return;
+            long position = 8 + ID_SIZE;
+            validLength = position;
+            while (readFully(channel, header.clear(), position)) {
+                int length = header.getInt(2 * ID_SIZE);
+                long end = position + RECORD_HEADER_SIZE + length;
+                if (length < 0 || end > size)
+                    break;
+                // a diff stored again after a lost flush replaces the previous record
+                index.put(new Key(ObjectId.fromRaw(header.array(), 0), ObjectId.fromRaw(header.array(), ID_SIZE)),
+                        new Location(position + RECORD_HEADER_SIZE, length));
+                position = end;
+                validLength = position;
+            }
+        } catch (IOException e) {
+            // the records indexed so far are kept, the rest of the file is dropped at the first flush
+        }
+    }
+
+    /**
+     * @return false if the file ends before the buffer is filled
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static List<DiffPrefetcher.FileDiff> readBody(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<DiffPrefetcher.FileDiff> files = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StoredEntry entry = new StoredEntry(DiffEntry.ChangeType.values()[in.readByte()], in.readUTF(), in.readUTF(),
+                    FileMode.fromBits(in.readInt()), FileMode.fromBits(in.readInt()), readId(in), readId(in), in.readInt());
+            files.add(new DiffPrefetcher.FileDiff(entry, in.readInt(), in.readInt()));
+        }
+        return files;
+    }
+
+    private static void writeBody(DataOutput out, List<DiffPrefetcher.FileDiff> files) throws IOException {
+        out.writeInt(files.size());
+        for (DiffPrefetcher.FileDiff file : files) {
+            DiffEntry entry = file.entry();
+            out.writeByte(entry.getChangeType().ordinal());
+            out.writeUTF(entry.getOldPath());
+            out.writeUTF(entry.getNewPath());
+            out.writeInt(entry.getOldMode().getBits());
+            out.writeInt(entry.getNewMode().getBits());
+            writeId(out, entry.getOldId().toObjectId());
+            writeId(out, entry.getNewId().toObjectId());
+            out.writeInt(entry.getScore());
+            out.writeInt(file.linesAdded());
+            out.writeInt(file.linesDeleted());
+        }
+    }
+
+    private static Key key(AnyObjectId previous, AnyObjectId commit) {
+        return new Key(previous == null ? ObjectId.zeroId() : previous.copy(), commit.copy());
+    }
+
+    private static ObjectId readId(DataInput in) throws IOException {
+        byte[] raw = new byte[ID_SIZE];
+        in.readFully(raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    private static void writeId(DataOutput out, ObjectId id) throws IOException {
+        byte[] raw = new byte[ID_SIZE];
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+    }
+
+    /**
+     * A diff entry read from the store.
+     */
+    private static final class StoredEntry extends DiffEntry {
+        private StoredEntry(ChangeType changeType, String oldPath, String newPath, FileMode oldMode, FileMode newMode,
+                            ObjectId oldId, ObjectId newId, int score) {
+            this.changeType = changeType;
+            this.oldPath = oldPath;
+            this.newPath = newPath;
+            this.oldMode = oldMode;
+            this.newMode = newMode;
+            this.oldId = AbbreviatedObjectId.fromObjectId(oldId);
+            this.newId = AbbreviatedObjectId.fromObjectId(newId);
+            this.score = score;
+        }
+    }
+}
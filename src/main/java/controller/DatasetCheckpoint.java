@@ -0,0 +1,163 @@
+package controller;
+
+import model.FeatureTable;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of the dataset under construction at the end of a release, saved in a compact binary file so that
+ * a later construction can start from the next release instead of from the first commit: either to resume
+ * an interrupted construction, or to update the dataset when new commits, releases and bugs appear.
+ * <p>
+ * A checkpoint depends only on the releases it covers: the {@link Header} records a digest of each of them
+ * (commits and their bug labels) and of the settings, and can be read alone to find out if the checkpoint
+ * is still valid before loading the whole table.
+ *
+ * @param header                what the checkpoint has been computed from
+ * @param indexOfCurrentRelease index in the dataset of the first instance of the release after the completed one
+ * @param datasetRows           the rows of the feature table in the dataset, in order
+ * @param snapshotReleases      the releases of the snapshots taken so far, in the order they have been taken
+ * @param table                 the feature table, with the snapshots
+ */
+public record DatasetCheckpoint(Header header, int indexOfCurrentRelease, int[] datasetRows,
+                                List<String> snapshotReleases, FeatureTable table) {
+
+    private static final int MAGIC = 0x44534350; // "DSCP"
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * @param settings       digest of the settings used to compute the dataset
+     * @param releases       the releases applied to the dataset, in order; the last one is the completed release
+     * @param releaseDigests digest of the commits and labels of each release, in the same order
+     * @param nextRelease    the release the instances have been carried over to, or the empty string if none
+     * @param lastCommit     the last commit of the completed release
+     */
+    public record Header(ObjectId settings, List<String> releases, List<ObjectId> releaseDigests, String nextRelease,
+                         ObjectId lastCommit) {
+
+        public String completedRelease() {
+            return releases.get(releases.size() - 1);
+        }
+    }
+
+    /**
+     * @param file the checkpoint file
+     * @return the header of the checkpoint, or null if the file does not exist or is not readable
+     */
+    public static Header readHeader(Path file) {
+        if (!Files.exists(file))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return readHeader(in);
+        } catch (IOException | RuntimeException e) {
+            // a truncated or corrupted checkpoint is simply ignored
+            return null;
+        }
+    }
+
+    /**
+     * @param file the checkpoint file
+     * @return the checkpoint, or null if the file does not exist or is not readable
+     */
+    public static DatasetCheckpoint load(Path file) {
+        if (!Files.exists(file))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            Header header = readHeader(in);
+            if (header == null)
+                return null;
+            int indexOfCurrentRelease = in.readInt();
+            int[] datasetRows = new int[in.readInt()];
+            for (int i = 0; i < datasetRows.length; i++) {
+                datasetRows[i] = in.readInt();
+            }
+            List<String> snapshotReleases = readStrings(in);
+            FeatureTable table = FeatureTable.readFrom(in);
+            return new DatasetCheckpoint(header, indexOfCurrentRelease, datasetRows, snapshotReleases, table);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the checkpoint, atomically replacing the file.
+     */
+    public void save(Path file) throws IOException {
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeId(out, header.settings());
+                writeStrings(out, header.releases());
+                for (ObjectId digest : header.releaseDigests()) {
+                    writeId(out, digest);
+                }
+                out.writeUTF(header.nextRelease());
+                writeId(out, header.lastCommit());
+                out.writeInt(indexOfCurrentRelease);
+                out.writeInt(datasetRows.length);
+                for (int row : datasetRows) {
+                    out.writeInt(row);
+                }
+                writeStrings(out, snapshotReleases);
+                table.writeTo(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            return null;
+        ObjectId settings = readId(in);
+        List<String> releases = readStrings(in);
+        if (releases.isEmpty())
+            return null;
+        List<ObjectId> releaseDigests = new ArrayList<>(releases.size());
+        for (int i = 0; i < releases.size(); i++) {
+            releaseDigests.add(readId(in));
+        }
+        String nextRelease = in.readUTF();
+        ObjectId lastCommit = readId(in);
+        return new Header(settings, releases, releaseDigests, nextRelease, lastCommit);
+    }
+
+    private static ObjectId readId(DataInput in) throws IOException {
+        byte[] raw = new byte[20];
+        in.readFully(raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    private static void writeId(DataOutput out, ObjectId id) throws IOException {
+        byte[] raw = new byte[20];
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+}
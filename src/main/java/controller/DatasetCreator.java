@@ -1,15 +1,22 @@
 package controller;
 
+import git.BlobCache;
+import git.GitAnalyzer;
 import model.Bug;
 import model.DatasetInstance;
-import model.GitCommit;
+import model.FeatureTable;
+import model.ReleaseTimeline;
 import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.revwalk.RevCommit;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
@@ -21,13 +28,71 @@ public class DatasetCreator {
     private final GitManager gitManager;
     private final List<Bug> bugs;
     private final Logger logger;
-
+    private static final int DIFF_THREADS = Runtime.getRuntime().availableProcessors();
+    // diffs computed in advance of the ones applied to the dataset
+    private static final int DIFF_WINDOW = DIFF_THREADS * 8;
+    // memory for the contents of the blobs shared by rename detection and line counting
+    private static final long BLOB_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final String DIFF_STORE_FILE = "diffs.bin";
+
+    private CommitBugIndex commitBugIndex;
+    private DatasetIndex datasetIndex;
+    private FeatureTable featureTable;
     private List<DatasetInstance> dataset;
     private int indexOfCurrentRelease = 0;
+    private Path checkpointDirectory;
+    private ObjectId settingsDigest;
+    private Map<String, ObjectId> releaseDigests;
+    private CommitDiffStore diffStore;
+    // releases whose commits have been all applied to the dataset, in order
+    private List<String> appliedReleases;
+    // snapshot of the dataset at the end of each release
+    private Map<String, List<DatasetInstance>> snapshots;
 
 
     private Map<String, List<DatasetInstance>> datasetsWithSnoring;
 
+    private static volatile DiffMode diffMode = DiffMode.CHRONOLOGICAL;
+    private static volatile MergePolicy mergePolicy = MergePolicy.SKIP;
+    private static volatile boolean labelOnlyAfterHalf = false;
+
+    /**
+     * Sets what each commit is compared to when building the datasets.
+     *
+     * @param mode   the commit each commit is compared to
+     * @param policy how merge commits are compared to their parents, in {@link DiffMode#FIRST_PARENT} mode
+     */
+    public static void setDiffMode(DiffMode mode, MergePolicy policy) {
+        diffMode = mode;
+        mergePolicy = policy;
+    }
+
+    /**
+     * Enables the label-only mode: the releases after the last one of the first half are not added to the dataset,
+     * since they are cut away at the end; only the commits fixing a bug are diffed, to label the files of the
+     * first half as buggy. Renames made by the other commits of those releases are not followed.
+     *
+     * @param labelOnly true to enable the label-only mode
+     */
+    public static void setLabelOnlyAfterHalf(boolean labelOnly) {
+        labelOnlyAfterHalf = labelOnly;
+    }
+
+    /**
+     * Enables the checkpoints: at the end of each release the state of the dataset is saved in the directory.
+     * A later construction starts from the last release whose checkpoint is still valid, i.e. such that
+     * the commits and the bug labels of that release and of all the previous ones have not changed:
+     * an interrupted construction is resumed, and a dataset is updated processing only the new history.
+     * The diffs of the commits are saved in the directory too: when the labels of a release have changed,
+     * the releases from that one on are analyzed again without diffing their commits.
+     * Older checkpoints are thinned out as new ones are saved, so only a logarithmic number of them is kept.
+     *
+     * @param checkpointDirectory the directory of the checkpoints, or null to disable checkpoints
+     */
+    public void setCheckpointDirectory(Path checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
     public Map<String, List<DatasetInstance>> getMultipleDatasets() {
         return this.datasetsWithSnoring;
     }
@@ -47,99 +112,400 @@ public class DatasetCreator {
      * @param gitLog mapping of release with commits
      * @return the list of instances for the dataset
      */
-    public List<DatasetInstance> computeDataset(Map<String, List<RevCommit>> gitLog) throws IOException {
-        gitManager.setDiffFormatter(); // prepare the diff formatter to filter only java files, excluding tests
+    public List<DatasetInstance> computeDataset(Map<String, List<ObjectId>> gitLog) throws IOException {
+        // index bugs by the commits that refer them, so that labeling a modified file is a single lookup
+        commitBugIndex = new CommitBugIndex(this.bugs, versionManager.getTimeline());
+        featureTable = new FeatureTable();
         dataset = new ArrayList<>();
+        datasetIndex = new DatasetIndex();
+
+        appliedReleases = new ArrayList<>();
+        snapshots = new LinkedHashMap<>();
+
+        DiffMode mode = diffMode;
+        Map<String, List<ObjectId>> commitsPerRelease = mode == DiffMode.FIRST_PARENT ? sortTopologically(gitLog) : gitLog;
+        Map<String, List<ObjectId>> labelOnlyReleases = labelOnlyAfterHalf
+                ? splitAfterLastHalfRelease(commitsPerRelease) : Collections.emptyMap();
+        Set<String> skippedReleases = new HashSet<>(labelOnlyReleases.keySet());
+
+        // start from the end of the last release whose checkpoint is still valid, if any
+        ObjectId base = null;
+        if (checkpointDirectory != null) {
+            settingsDigest = settingsDigest(mode);
+            releaseDigests = new HashMap<>();
+            for (Map.Entry<String, List<ObjectId>> release : commitsPerRelease.entrySet()) {
+                releaseDigests.put(release.getKey(), releaseDigest(release.getKey(), release.getValue()));
+            }
+            base = resume(commitsPerRelease, skippedReleases);
+            diffStore = new CommitDiffStore(checkpointDirectory.resolve(DIFF_STORE_FILE), settingsDigest);
+            String log = String.format("Stored diffs: %d", diffStore.size());
+            logger.info(log);
+        }
+        List<ObjectId> allCommits = new ArrayList<>();
+        for (Map.Entry<String, List<ObjectId>> release : commitsPerRelease.entrySet()) {
+            if (!skippedReleases.contains(release.getKey()))
+                allCommits.addAll(release.getValue());
+        }
 
+        // diffs between subsequent commits are computed in parallel, but applied to the dataset in order
+        BlobCache blobCache = new BlobCache(BLOB_CACHE_BYTES);
+        try (DiffPrefetcher prefetcher = new DiffPrefetcher(gitManager, allCommits, base, mode, mergePolicy, true,
+                DIFF_THREADS, DIFF_WINDOW, blobCache, diffStore, logger)) {
+            analyzeReleases(commitsPerRelease, skippedReleases, prefetcher);
+        } finally {
+            if (diffStore != null)
+                diffStore.close();
+        }
+        if (!labelOnlyReleases.isEmpty())
+            labelBuggyFiles(labelOnlyReleases, blobCache);
+        String log = String.format("Blob cache: %d hits, %d misses", blobCache.getHits(), blobCache.getMisses());
+        logger.info(log);
+
+        // the training sets are the snapshots of the first half of releases
         datasetsWithSnoring = new LinkedHashMap<>();
+        for (Map.Entry<String, List<DatasetInstance>> snapshot : snapshots.entrySet()) {
+            if (versionManager.getHalfVersions().containsKey(snapshot.getKey()))
+                datasetsWithSnoring.put(snapshot.getKey(), snapshot.getValue());
+        }
 
-        RevCommit prev = null;
+        // cut the dataset to the first half of releases
+        cutDatasetInHalf();
+        return dataset;
+    }
 
-        String log;
-        for (Map.Entry<String, List<RevCommit>> release : gitLog.entrySet()) {
+    /**
+     * Sorts the commits of each release in topological order, so that the changes of the parents of a commit
+     * are always applied before its own; commits not reachable from HEAD keep their chronological order.
+     */
+    private Map<String, List<ObjectId>> sortTopologically(Map<String, List<ObjectId>> gitLog) throws IOException {
+        Map<ObjectId, Integer> topologicalIndex = new HashMap<>();
+        for (RevCommit commit : new GitAnalyzer().getTopologicalGitLog(gitManager.getGit())) {
+            topologicalIndex.put(commit.copy(), topologicalIndex.size());
+        }
+        Map<String, List<ObjectId>> sorted = new LinkedHashMap<>();
+        for (Map.Entry<String, List<ObjectId>> release : gitLog.entrySet()) {
+            List<ObjectId> commits = new ArrayList<>(release.getValue());
+            commits.sort(Comparator.comparingInt(commit -> topologicalIndex.getOrDefault(commit, Integer.MAX_VALUE)));
+            sorted.put(release.getKey(), commits);
+        }
+        return sorted;
+    }
 
+    /**
+     * @return the releases after the last one of the first half, with their commits
+     */
+    private Map<String, List<ObjectId>> splitAfterLastHalfRelease(Map<String, List<ObjectId>> gitLog) {
+        Set<String> halfVersions = versionManager.getHalfVersions().keySet();
+        Map<String, List<ObjectId>> after = new LinkedHashMap<>();
+        for (Map.Entry<String, List<ObjectId>> release : gitLog.entrySet()) {
+            if (halfVersions.contains(release.getKey()))
+                after.clear();
+            else
+                after.put(release.getKey(), release.getValue());
+        }
+        return after;
+    }
+
+    private void analyzeReleases(Map<String, List<ObjectId>> gitLog, Set<String> skippedReleases,
+                                 DiffPrefetcher prefetcher) throws IOException {
+        String log;
+        int releaseIndex = -1;
+        for (Map.Entry<String, List<ObjectId>> release : gitLog.entrySet()) {
+            releaseIndex++;
+            if (skippedReleases.contains(release.getKey()))
+                continue;
 
             // for each release
             log = String.format("Release: %s\tCommits: %d", release.getKey(), release.getValue().size());
             logger.info(log);
-            for (RevCommit current : release.getValue()) {
+            for (int c = 0; c < release.getValue().size(); c++) {
                 // for each commit
-                analyzeCommitPair(release.getKey(), prev, current);
-
-                prev = current;
+                applyCommitDiff(release.getKey(), prefetcher.next());
             }
+            // drop the instances of the files deleted during the release
+            datasetIndex.compact(dataset);
 
             /*
-            At the end of each release, clone the actual state of the dataset in the list to have the training set for Walk Forward
+            At the end of each release, take a snapshot of the actual state of the dataset: the ones of the first half
+            of releases are the training sets for Walk Forward, and the snapshots are cheap since they are copy-on-write
              */
-            if (versionManager.getHalfVersions().containsKey(release.getKey())) {
-                datasetsWithSnoring.put(release.getKey(), cloneCurrentStateOfDataset());
-            }
+            snapshots.put(release.getKey(), featureTable.snapshot(dataset));
 
-            /* At the end of each release (except the last one), copy each file present in the dataset
-             as a file present in the next release.
-             Deletion, modification and so on will count on this!
-             */
-            String nextRelease = versionManager.findNextVersion(release.getKey());
+            String nextRelease = carryOver(release.getKey());
+            appliedReleases.add(release.getKey());
+
+            if (checkpointDirectory != null)
+                saveCheckpoint(releaseIndex, nextRelease, release.getValue().get(release.getValue().size() - 1));
+        }
+    }
+
+    /**
+     * At the end of each release (except the last one), copy each file present in the dataset
+     * as a file present in the next release.
+     * Deletion, modification and so on will count on this!
+     *
+     * @return the next release, or null if the release is the last one
+     */
+    private String carryOver(String release) {
+        String nextRelease = versionManager.findNextVersion(release);
+        if (nextRelease != null) {
+            // only if the current release is not the last one
             // the size is kept before adding the files of the next release
             int newValueForIndex = dataset.size();
-            if (nextRelease != null) {
-                // only if the current release is not the last one
-
-                List<DatasetInstance> nextReleaseInstances = new ArrayList<>();
-                for (int i = indexOfCurrentRelease; i < dataset.size(); i++) {
-                    // each file present at the end of the current release is initially present also in the next release
-                    nextReleaseInstances.add(new DatasetInstance(dataset.get(i), nextRelease));
-                    // compute age at the end of each release for each instance in that release
-                    computeAge(dataset.get(i), release.getKey());
-                }
 
-                dataset.addAll(nextReleaseInstances);
+            List<DatasetInstance> nextReleaseInstances = new ArrayList<>();
+            for (int i = indexOfCurrentRelease; i < dataset.size(); i++) {
+                // each file present at the end of the current release is initially present also in the next release
+                DatasetInstance nextInstance = featureTable.carryOver(dataset.get(i), nextRelease);
+                nextReleaseInstances.add(nextInstance);
+                datasetIndex.add(nextInstance);
+                // compute age at the end of each release for each instance in that release
+                computeAge(dataset.get(i), release);
             }
 
+            dataset.addAll(nextReleaseInstances);
+
             // increment the index to the first entry of the next release
             indexOfCurrentRelease = newValueForIndex;
         }
+        // otherwise the index still points to the first entry of the release, to carry it over when a new release appears
+        return nextRelease;
+    }
 
-        // cut the dataset to the first half of releases
-        cutDatasetInHalf();
-        return dataset;
+    /**
+     * Restores the state of the dataset from the checkpoint of the last release that is still valid, if any.
+     *
+     * @param gitLog          the commits of each release
+     * @param skippedReleases the releases not to analyze, to which the releases already in the checkpoint are added
+     * @return the last commit applied to the restored dataset, or null if nothing has been restored
+     */
+    private ObjectId resume(Map<String, List<ObjectId>> gitLog, Set<String> skippedReleases) {
+        List<String> releases = new ArrayList<>(gitLog.keySet());
+        for (int k = releases.size() - 1; k >= 0; k--) {
+            if (skippedReleases.contains(releases.get(k)))
+                continue;
+            Path file = checkpointFile(k);
+            DatasetCheckpoint.Header header = DatasetCheckpoint.readHeader(file);
+            if (header == null || !isValid(header, releases.subList(0, k + 1), gitLog))
+                continue;
+            DatasetCheckpoint checkpoint = DatasetCheckpoint.load(file);
+            if (checkpoint == null || checkpoint.snapshotReleases().size() != checkpoint.table().getSnapshotCount())
+                continue;
+
+            restore(checkpoint);
+            skippedReleases.addAll(header.releases());
+            String log = String.format("Starting from the checkpoint of release %s: %d of %d releases to analyze",
+                    header.completedRelease(), releases.size() - k - 1, releases.size());
+            logger.info(log);
+            List<ObjectId> completedCommits = gitLog.get(header.completedRelease());
+            return completedCommits.get(completedCommits.size() - 1);
+        }
+        logger.info("No valid checkpoint, starting from the first commit");
+        return null;
     }
 
-    private void analyzeCommitPair(String release, RevCommit prev, RevCommit current) throws IOException {
-        List<DiffEntry> diffs = gitManager.makeDiff(prev, current);
-        for (DiffEntry diff : diffs) {
-            switch (diff.getChangeType()) {
-                case ADD -> handleAdd(diff, release, current);
-                case COPY -> handleCopy(diff, current);
-                case DELETE -> handleDelete(diff, release);
-                case MODIFY -> handleModify(diff, release, current);
-                case RENAME -> handleRename(diff, release, current);
+    private boolean isValid(DatasetCheckpoint.Header header, List<String> releases, Map<String, List<ObjectId>> gitLog) {
+        if (!header.settings().equals(settingsDigest) || !header.releases().equals(releases))
+            return false;
+        for (int i = 0; i < releases.size(); i++) {
+            if (!header.releaseDigests().get(i).equals(releaseDigests.get(releases.get(i))))
+                return false;
+        }
+        String completedRelease = header.completedRelease();
+        List<ObjectId> completedCommits = gitLog.get(completedRelease);
+        if (!completedCommits.get(completedCommits.size() - 1).equals(header.lastCommit()))
+            return false;
+        // the instances can be carried over later to a new release, but not to a different one
+        String nextRelease = versionManager.findNextVersion(completedRelease);
+        return header.nextRelease().isEmpty() || header.nextRelease().equals(nextRelease);
+    }
+
+    private void restore(DatasetCheckpoint checkpoint) {
+        featureTable = checkpoint.table();
+        for (int row : checkpoint.datasetRows()) {
+            DatasetInstance instance = featureTable.instanceAt(row);
+            dataset.add(instance);
+            datasetIndex.add(instance);
+        }
+        indexOfCurrentRelease = checkpoint.indexOfCurrentRelease();
+        for (int i = 0; i < checkpoint.snapshotReleases().size(); i++) {
+            snapshots.put(checkpoint.snapshotReleases().get(i), featureTable.getSnapshot(i));
+        }
+        appliedReleases.addAll(checkpoint.header().releases());
+        if (checkpoint.header().nextRelease().isEmpty())
+            // the completed release was the last one when the checkpoint has been saved
+            carryOver(checkpoint.header().completedRelease());
+    }
+
+    private void saveCheckpoint(int releaseIndex, String nextRelease, ObjectId lastCommit) {
+        int[] rows = new int[dataset.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = featureTable.rowOf(dataset.get(i));
+        }
+        List<ObjectId> digests = new ArrayList<>(appliedReleases.size());
+        for (String release : appliedReleases) {
+            digests.add(releaseDigests.get(release));
+        }
+        DatasetCheckpoint.Header header = new DatasetCheckpoint.Header(settingsDigest, new ArrayList<>(appliedReleases),
+                digests, nextRelease == null ? "" : nextRelease, lastCommit.copy());
+        DatasetCheckpoint checkpoint = new DatasetCheckpoint(header, indexOfCurrentRelease, rows,
+                new ArrayList<>(snapshots.keySet()), featureTable);
+        try {
+            Files.createDirectories(checkpointDirectory);
+            diffStore.flush();
+            checkpoint.save(checkpointFile(releaseIndex));
+            pruneCheckpoints(releaseIndex);
+        } catch (IOException e) {
+            // the construction goes on, it just cannot be resumed from this release
+            String log = String.format("Could not save the checkpoint of release %s: %s", header.completedRelease(), e.getMessage());
+            logger.warning(log);
+        }
+    }
+
+    /**
+     * Deletes the checkpoints that are not needed anymore, keeping the last two and, at distance d from the
+     * last one, only those whose index is a multiple of the highest power of two not greater than d, so the
+     * checkpoints get sparser going back in history. A deleted checkpoint would never be kept by a later release.
+     */
+    private void pruneCheckpoints(int lastIndex) throws IOException {
+        for (int i = 0; i < lastIndex - 1; i++) {
+            int step = Integer.highestOneBit(lastIndex - i);
+            if (i % step != 0)
+                Files.deleteIfExists(checkpointFile(i));
+        }
+    }
+
+    private Path checkpointFile(int releaseIndex) {
+        return checkpointDirectory.resolve(String.format("release-%04d.bin", releaseIndex));
+    }
+
+    /**
+     * @return a digest of the settings the dataset depends on
+     */
+    private ObjectId settingsDigest(DiffMode mode) {
+        MessageDigest digest = Constants.newMessageDigest();
+        String settings = mode + "|" + mergePolicy + "|" + GitManager.getPathFilter();
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        return ObjectId.fromRaw(digest.digest());
+    }
+
+    /**
+     * @return a digest of everything the changes applied to the dataset in a release depend on: the date of the
+     * release, its commits and the bugs each commit is linked to, with their affected versions
+     */
+    private ObjectId releaseDigest(String release, List<ObjectId> commits) {
+        MessageDigest digest = Constants.newMessageDigest();
+        digest.update((release + "|" + versionManager.getReleaseDateOfVersion(release)).getBytes(StandardCharsets.UTF_8));
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        ReleaseTimeline timeline = versionManager.getTimeline();
+        for (ObjectId commit : commits) {
+            commit.copyRawTo(raw, 0);
+            digest.update(raw);
+            CommitBugIndex.Labels labels = commitBugIndex.labelsOf(commit);
+            StringBuilder builder = new StringBuilder();
+            for (Bug bug : labels.bugs()) {
+                builder.append(bug.getTicket().getKey()).append('|');
+            }
+            for (int avId : labels.affectedVersionIds()) {
+                builder.append(timeline.nameOf(avId)).append('|');
             }
+            digest.update(builder.toString().getBytes(StandardCharsets.UTF_8));
         }
+        return ObjectId.fromRaw(digest.digest());
     }
 
-    private void handleAdd(DiffEntry entry, String release, RevCommit commit) {
-        List<DatasetInstance> currentRelease = dataset.subList(this.indexOfCurrentRelease, this.dataset.size());
-        boolean notPresent = true;
-        for (DatasetInstance i : currentRelease) {
-            if (i.getFilename().equals(entry.getNewPath())) {
-                notPresent = false;
-                break;
+    /**
+     * Label-only analysis of the releases after the first half: each commit fixing a bug is compared to its
+     * parent, and the files it modifies are labeled as buggy in the affected versions, under all the names
+     * they had. Only renames made by those commits are followed, all the other commits are not diffed at all.
+     */
+    private void labelBuggyFiles(Map<String, List<ObjectId>> releases, BlobCache blobCache) throws IOException {
+        // names of each file in the first half, starting from the files carried over from the last release of it
+        Map<String, Set<String>> namesOf = new HashMap<>();
+        for (int i = indexOfCurrentRelease; i < dataset.size(); i++) {
+            DatasetInstance instance = dataset.get(i);
+            Set<String> names = new HashSet<>(instance.getPreviousNames());
+            names.add(instance.getFilename());
+            namesOf.put(instance.getFilename(), names);
+        }
+
+        List<ObjectId> fixCommits = new ArrayList<>();
+        int commits = 0;
+        for (List<ObjectId> releaseCommits : releases.values()) {
+            commits += releaseCommits.size();
+            for (ObjectId commit : releaseCommits) {
+                if (!commitBugIndex.labelsOf(commit).bugs().isEmpty())
+                    fixCommits.add(commit);
+            }
+        }
+        String log = String.format("Label-only releases: %s	Commits diffed: %d of %d", releases.keySet(),
+                fixCommits.size(), commits);
+        logger.info(log);
+
+        ReleaseTimeline timeline = versionManager.getTimeline();
+        try (DiffPrefetcher prefetcher = new DiffPrefetcher(gitManager, fixCommits, null, DiffMode.FIRST_PARENT, mergePolicy,
+                false, DIFF_THREADS, DIFF_WINDOW, blobCache, null, logger)) {
+            for (int c = 0; c < fixCommits.size(); c++) {
+                DiffPrefetcher.CommitDiff commitDiff = prefetcher.next();
+                int[] affectedVersionIds = commitBugIndex.labelsOf(commitDiff.commit()).affectedVersionIds();
+                for (DiffPrefetcher.FileDiff diff : commitDiff.files()) {
+                    DiffEntry entry = diff.entry();
+                    switch (entry.getChangeType()) {
+                        case ADD -> namesOf.put(entry.getNewPath(), new HashSet<>(Set.of(entry.getNewPath())));
+                        case DELETE -> namesOf.remove(entry.getOldPath());
+                        case RENAME, COPY -> {
+                            // copies are handled as renames, like in the full analysis
+                            Set<String> names = namesOf.remove(entry.getOldPath());
+                            if (names != null) {
+                                names.add(entry.getNewPath());
+                                namesOf.put(entry.getNewPath(), names);
+                            }
+                        }
+                        case MODIFY -> {
+                            Set<String> names = namesOf.getOrDefault(entry.getNewPath(), Set.of(entry.getNewPath()));
+                            for (int avId : affectedVersionIds) {
+                                String av = timeline.nameOf(avId);
+                                for (String name : names) {
+                                    DatasetInstance affected = datasetIndex.getLatest(name, av);
+                                    if (affected != null)
+                                        affected.setBuggy(true);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void applyCommitDiff(String release, DiffPrefetcher.CommitDiff commitDiff) {
+        RevCommit current = commitDiff.commit();
+        for (DiffPrefetcher.FileDiff diff : commitDiff.files()) {
+            switch (diff.entry().getChangeType()) {
+                case ADD -> handleAdd(diff, release, current);
+                case COPY -> handleCopy(diff.entry(), current);
+                case DELETE -> handleDelete(diff.entry(), release);
+                case MODIFY -> handleModify(diff, release, current);
+                case RENAME -> handleRename(diff.entry(), release, current);
             }
         }
-        if (!notPresent) {
+    }
+
+    private void handleAdd(DiffPrefetcher.FileDiff diff, String release, RevCommit commit) {
+        DiffEntry entry = diff.entry();
+        if (datasetIndex.getLatest(entry.getNewPath(), release) != null) {
             // file already exists
             return;
         }
         PersonIdent author = commit.getAuthorIdent();
         LocalDate creationDate = author.getWhen().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
 
-        DatasetInstance instance = new DatasetInstance(release, entry.getNewPath(), creationDate, false);
+        DatasetInstance instance = featureTable.addRow(release, entry.getNewPath(), creationDate, false);
         instance.addAuthor(author.getName());
         instance.incrementNumberOfRevisions();
-        computeLocChanges(entry, instance);
+        computeLocChanges(diff, instance);
         dataset.add(instance);
+        datasetIndex.add(instance);
     }
 
     private void handleCopy(DiffEntry entry, RevCommit commit) {
@@ -148,40 +514,39 @@ public class DatasetCreator {
         // let's add the new file, but we must also transfer the buggy attribute of the existing file
         String oldName = entry.getOldPath();
         String newName = entry.getNewPath();
-        int idx = getLatestInstanceByName(oldName);
-        if (idx < 0)
+        DatasetInstance oldInstance = datasetIndex.getLatest(oldName);
+        if (oldInstance == null)
             return;
         if (Objects.equals(oldName, newName))
             return;
-        DatasetInstance oldInstance = dataset.get(idx);
         oldInstance.incrementNumberOfRevisions();
         oldInstance.addAuthor(author.getName());
         // handle it as a renaming, because additions cause duplicates
         oldInstance.addPreviousName(oldInstance.getFilename());
-        oldInstance.setFilename(newName);
+        datasetIndex.rename(oldInstance, newName);
     }
 
     private void handleDelete(DiffEntry entry, String release) {
         // remove only if there is an instance with the same release
         // because instances at the end of the previous release in advance
         // put in the current release
-        int idx = getLatestInstanceByName(entry.getOldPath());
-        if (idx < 0)
+        DatasetInstance instance = datasetIndex.getLatest(entry.getOldPath());
+        if (instance == null)
             return;
-        if (this.dataset.get(idx).getVersion().equals(release))
-            dataset.remove(idx);
+        if (instance.getVersion().equals(release))
+            datasetIndex.remove(instance);
 
         // no stat calculation is needed because the instance will be removed from the dataset
     }
 
-    private void handleModify(DiffEntry entry, String release, RevCommit commit) {
-        int indexLatest = getLatestInstanceByName(entry.getNewPath());
-        if (indexLatest < 0) {
+    private void handleModify(DiffPrefetcher.FileDiff diff, String release, RevCommit commit) {
+        DiffEntry entry = diff.entry();
+        //old instance
+        DatasetInstance instance = datasetIndex.getLatest(entry.getNewPath());
+        if (instance == null) {
             // file does not exist
             return;
         }
-        //old instance
-        DatasetInstance instance = this.dataset.get(indexLatest);
 
         if (!instance.getVersion().equals(release)) {
             // the latest release in which the file is present is not the current, so it has been deleted
@@ -189,23 +554,22 @@ public class DatasetCreator {
         }
 
         // Get bugs in order to detect if the instance is BUGGY
-        List<Bug> commitBugs = getBugsOfCommit(this.bugs, commit);
-        Set<String> affectedVersions = new HashSet<>();
-        for (Bug bug : commitBugs) {
-            affectedVersions.addAll(bug.getAffectedVersions());
-        }
+        CommitBugIndex.Labels labels = commitBugIndex.labelsOf(commit);
+        List<Bug> commitBugs = labels.bugs();
+        ReleaseTimeline timeline = versionManager.getTimeline();
 
-        int idx;
+        DatasetInstance affected;
         // Set buggy true
-        for (String av : affectedVersions) {
-            idx = getLatestInstanceByNameAndRelease(instance.getFilename(), av);
-            if (idx >= 0)
-                this.dataset.get(idx).setBuggy(true);
+        for (int avId : labels.affectedVersionIds()) {
+            String av = timeline.nameOf(avId);
+            affected = datasetIndex.getLatest(instance.getFilename(), av);
+            if (affected != null)
+                affected.setBuggy(true);
             // Check also for previous names of the file (handled with RENAME commits)
             for (String prevName : instance.getPreviousNames()) {
-                idx = getLatestInstanceByNameAndRelease(prevName, av);
-                if (idx >= 0)
-                    this.dataset.get(idx).setBuggy(true);
+                affected = datasetIndex.getLatest(prevName, av);
+                if (affected != null)
+                    affected.setBuggy(true);
             }
         }
 
@@ -216,16 +580,16 @@ public class DatasetCreator {
 
         //increment number of revisions
         // it's important to do it before loc changes computation
-        dataset.get(indexLatest).incrementNumberOfRevisions();
-        computeLocChanges(entry, dataset.get(indexLatest));
+        instance.incrementNumberOfRevisions();
+        computeLocChanges(diff, instance);
         // add author
-        dataset.get(indexLatest).addAuthor(commit.getAuthorIdent().getName());
+        instance.addAuthor(commit.getAuthorIdent().getName());
     }
 
     private void handleRename(DiffEntry entry, String release, RevCommit commit) {
         PersonIdent author = commit.getAuthorIdent();
-        int idx = getLatestInstanceByName(entry.getOldPath());
-        if (idx < 0)
+        DatasetInstance instance = datasetIndex.getLatest(entry.getOldPath());
+        if (instance == null)
             return;
 
         if (entry.getOldPath().equals(entry.getNewPath())) {
@@ -233,54 +597,15 @@ public class DatasetCreator {
             return;
         }
 
-        if (!dataset.get(idx).getVersion().equals(release)) {
+        if (!instance.getVersion().equals(release)) {
             // if the file is not present in the current release , we have nothing to rename
             return;
         }
         // renaming is only with the already inserted files of the CURRENT RELEASE
-        dataset.get(idx).addPreviousName(entry.getOldPath());
-        dataset.get(idx).setFilename(entry.getNewPath());
-        dataset.get(idx).incrementNumberOfRevisions();
-        dataset.get(idx).addAuthor(author.getName());
-    }
-
-    private int getLatestInstanceByName(String filename) {
-        int i = 0;
-        int max = -1;
-        for (DatasetInstance instance : this.dataset) {
-            if (instance.getFilename().equals(filename)) {
-                max = i;
-            }
-            i++;
-        }
-        return max;
-    }
-
-    private int getLatestInstanceByNameAndRelease(String filename, String release) {
-        int i = 0;
-        int max = 0;
-        for (DatasetInstance instance : this.dataset) {
-            if (instance.getFilename().equals(filename) && instance.getVersion().equals(release)) {
-                max = i;
-            }
-            i++;
-        }
-        return max;
-    }
-
-    private List<Bug> getBugsOfCommit(List<Bug> bugs, RevCommit commit) {
-        Set<Bug> bugsRetrieved = new HashSet<>();
-        for (Bug bug : bugs) {
-            if (bug.getFixCommit().getRevCommit().equals(commit)) {
-                bugsRetrieved.add(bug);
-            } else if (bug.getOtherCommits() != null) {
-                for (GitCommit gitCommit : bug.getOtherCommits()) {
-                    if (gitCommit.getRevCommit().equals(commit))
-                        bugsRetrieved.add(bug);
-                }
-            }
-        }
-        return new ArrayList<>(bugsRetrieved);
+        instance.addPreviousName(entry.getOldPath());
+        datasetIndex.rename(instance, entry.getNewPath());
+        instance.incrementNumberOfRevisions();
+        instance.addAuthor(author.getName());
     }
 
     private void cutDatasetInHalf() {
@@ -299,62 +624,13 @@ public class DatasetCreator {
     }
 
 
-    private List<DatasetInstance> cloneCurrentStateOfDataset() {
-        List<DatasetInstance> ret = new ArrayList<>();
-        for (DatasetInstance instance : this.dataset) {
-            // create a new instance to make a copy by value and not by reference, so
-            // the newly created instance will not be affected by changes in the original one
-            ret.add(new DatasetInstance(instance));
-        }
-        return ret;
-    }
-
-
     /* -------------------------------------------------------------------------- FEATURES COMPUTATION ----------------------------------------------------------------*/
 
-    private void computeLocChanges(DiffEntry diff, DatasetInstance instance) {
-        DiffFormatter df = gitManager.getDiffFormatter();
+    private void computeLocChanges(DiffPrefetcher.FileDiff diff, DatasetInstance instance) {
         int size = instance.getSize();
-        int linesAdded = 0;
-        int linesDeleted = 0;
-        int currentAdd;
-        int currentDelete;
-        try {
-            List<Edit> edits = df.toFileHeader(diff).toEditList();
-            for (Edit edit : edits) {
-                switch (edit.getType()) {
-                    case INSERT:// new LOC have been inserted
-                        currentAdd = edit.getLengthB() - edit.getLengthA();
-                        linesAdded += currentAdd;
-                        break;
-
-                    case DELETE: // LOC have been deleted
-                        currentDelete = edit.getLengthA() - edit.getLengthB();
-                        linesDeleted += currentDelete;
-                        break;
-
-                    case REPLACE:
-                        //LOCs have been modified
-                        if (edit.getLengthA() < edit.getLengthB()) {
-                            // the new version is bigger; so we have added lines
-                            currentAdd = edit.getLengthB() - edit.getLengthA();
-                            linesAdded += currentAdd;
-                        } else if (edit.getLengthA() > edit.getLengthB()) {
-                            // deleted lines
-                            currentDelete = edit.getLengthA() - edit.getLengthB();
-                            linesDeleted += currentDelete;
-                        }
-                        break;
-
-                    default:
-                        // do nothing
-                        break;
-                }
-            }
-        } catch (IOException e) {
-            logger.info("IOException computing LOCs");
-
-        }
+        // lines are counted by the diff prefetcher, together with the diff
+        int linesAdded = diff.linesAdded();
+        int linesDeleted = diff.linesDeleted();
         int modifiedLines = linesAdded + linesDeleted;
         int churn = linesAdded - linesDeleted;
         // compute the new size
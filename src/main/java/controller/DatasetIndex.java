@@ -0,0 +1,106 @@
+package controller;
+
+import model.DatasetInstance;
+
+import java.util.*;
+
+/**
+ * Hash index over the instances of the dataset under construction, maintained alongside the dataset list.
+ * Each instance gets an increasing sequence number when it is added, so the latest instance of a file
+ * (the one that comes last in the dataset) is the one with the highest sequence number.
+ * Instances are indexed both by filename and by (filename, release); renames move an instance between keys
+ * and removals only mark it as deleted: the dataset list is compacted in a single pass with {@link #compact(List)}.
+ */
+public final class DatasetIndex {
+
+    private record Key(String filename, String release) {
+    }
+
+    private final Map<String, NavigableMap<Long, DatasetInstance>> byName = new HashMap<>();
+    private final Map<Key, NavigableMap<Long, DatasetInstance>> byNameAndRelease = new HashMap<>();
+    private final Map<DatasetInstance, Long> sequences = new IdentityHashMap<>();
+    private final Set<DatasetInstance> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long nextSequence = 0;
+
+    /**
+     * Indexes an instance that has just been appended to the dataset.
+     */
+    public void add(DatasetInstance instance) {
+        long sequence = nextSequence++;
+        sequences.put(instance, sequence);
+        link(instance, sequence);
+    }
+
+    /**
+     * Changes the filename of an indexed instance, keeping its position in the dataset.
+     */
+    public void rename(DatasetInstance instance, String newFilename) {
+        Long sequence = sequences.get(instance);
+        if (sequence == null) {
+            instance.setFilename(newFilename);
+            return;
+        }
+        unlink(instance, sequence);
+        instance.setFilename(newFilename);
+        link(instance, sequence);
+    }
+
+    /**
+     * Removes an instance from the index; it stays in the dataset list until the next {@link #compact(List)}.
+     */
+    public void remove(DatasetInstance instance) {
+        Long sequence = sequences.remove(instance);
+        if (sequence == null)
+            return;
+        unlink(instance, sequence);
+        deleted.add(instance);
+    }
+
+    /**
+     * Removes from the dataset all the instances deleted since the previous compaction.
+     */
+    public void compact(List<DatasetInstance> dataset) {
+        if (deleted.isEmpty())
+            return;
+        dataset.removeIf(deleted::contains);
+        deleted.clear();
+    }
+
+    /**
+     * @return the latest instance of the file in any release, or null if there is none
+     */
+    public DatasetInstance getLatest(String filename) {
+        return lastValue(byName.get(filename));
+    }
+
+    /**
+     * @return the latest instance of the file in the given release, or null if there is none
+     */
+    public DatasetInstance getLatest(String filename, String release) {
+        return lastValue(byNameAndRelease.get(new Key(filename, release)));
+    }
+
+    private void link(DatasetInstance instance, long sequence) {
+        byName.computeIfAbsent(instance.getFilename(), k -> new TreeMap<>()).put(sequence, instance);
+        byNameAndRelease.computeIfAbsent(new Key(instance.getFilename(), instance.getVersion()), k -> new TreeMap<>())
+                .put(sequence, instance);
+    }
+
+    private void unlink(DatasetInstance instance, long sequence) {
+        removeEntry(byName, instance.getFilename(), sequence);
+        removeEntry(byNameAndRelease, new Key(instance.getFilename(), instance.getVersion()), sequence);
+    }
+
+    private static <K> void removeEntry(Map<K, NavigableMap<Long, DatasetInstance>> map, K key, long sequence) {
+        NavigableMap<Long, DatasetInstance> instances = map.get(key);
+        if (instances == null)
+            return;
+        instances.remove(sequence);
+        if (instances.isEmpty())
+            map.remove(key);
+    }
+
+    private static DatasetInstance lastValue(NavigableMap<Long, DatasetInstance> instances) {
+        return instances == null ? null : instances.lastEntry().getValue();
+    }
+}
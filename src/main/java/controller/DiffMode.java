@@ -0,0 +1,11 @@
+package controller;
+
+/**
+ * Commit each commit of the log is compared to, to find the files it changed.
+ */
+public enum DiffMode {
+    // the previous commit in time order, even if it is on another branch
+    CHRONOLOGICAL,
+    // the parents of the commit, following the topological order of the history
+    FIRST_PARENT
+}
@@ -0,0 +1,261 @@
+package controller;
+
+import git.BlobCache;
+import git.LocStatsCache;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Computes the diffs between consecutive commits of the log, and the lines added and deleted in each changed file,
+ * in a pool of threads, each one with its own {@link DiffFormatter} (and so its own object reader).
+ * The readers of all the threads share a {@link BlobCache}, so that blobs loaded for rename detection
+ * are not loaded again to count the changed lines, and diffs already in a {@link CommitDiffStore} are not computed at all.
+ * Each commit is compared to the previous one in the log, or to its parents, depending on the {@link DiffMode}.
+ * The diffs are handed out in the order of the log, one at a time, through {@link #next()}; at most a fixed number
+ * of diffs is computed in advance of the consumer, so memory stays bounded however long the log is.
+ * The log is a list of commit ids (e.g. read from the commit table): each diff parses its commits with a walk of
+ * its own, so a parsed commit is not retained once its diff has been consumed.
+ */
+public class DiffPrefetcher implements AutoCloseable {
+
+    /**
+     * A changed file; lines are counted only for added and modified files, and only if requested.
+     */
+    public record FileDiff(DiffEntry entry, int linesAdded, int linesDeleted) {
+    }
+
+    /**
+     * The changed files of a commit, with respect to the previous commit of the log or to its parents.
+     */
+    public record CommitDiff(RevCommit commit, List<FileDiff> files) {
+    }
+
+    private static volatile LocStatsCache locStatsCache;
+
+    private final GitManager gitManager;
+    private final List<ObjectId> commits;
+    private final ObjectId base;
+    private final Logger logger;
+    private final ExecutorService pool;
+    private final int window;
+    private final DiffMode diffMode;
+    private final MergePolicy mergePolicy;
+    private final boolean countLines;
+    private final BlobCache blobCache;
+    private final CommitDiffStore store;
+    private final ThreadLocal<ObjectReader> readers;
+    private final ThreadLocal<DiffFormatter> formatters;
+    private final List<DiffFormatter> createdFormatters = Collections.synchronizedList(new ArrayList<>());
+    private final List<ObjectReader> createdReaders = Collections.synchronizedList(new ArrayList<>());
+    private final Deque<Future<CommitDiff>> pending = new ArrayDeque<>();
+    private int submitted = 0;
+
+    /**
+     * @param gitManager the manager of the repository, used to create the diff formatters
+     * @param commits    the log, sorted chronologically (or topologically in {@link DiffMode#FIRST_PARENT} mode)
+     * @param base       the commit the first commit is compared to in {@link DiffMode#CHRONOLOGICAL} mode,
+     *                   or null to compare it to the empty tree
+     * @param diffMode   what each commit is compared to
+     * @param mergePolicy how merge commits are compared to their parents, in {@link DiffMode#FIRST_PARENT} mode
+     * @param countLines false to only find the changed files, when the lines added and deleted are not needed
+     * @param threads    the number of threads computing diffs
+     * @param window     the maximum number of diffs computed in advance
+     * @param blobCache  the cache of the blobs shared by the threads
+     * @param store      the store of the diffs already computed, where the new ones are added; null to always compute them
+     * @param logger     the logger
+     */
+    public DiffPrefetcher(GitManager gitManager, List<ObjectId> commits, ObjectId base, DiffMode diffMode, MergePolicy mergePolicy,
+                          boolean countLines, int threads, int window, BlobCache blobCache, CommitDiffStore store,
+                          Logger logger) {
+        if (threads < 1 || window < 1)
+            throw new IllegalArgumentException("At least one thread and a window of one diff are needed");
+        this.gitManager = gitManager;
+        this.commits = commits;
+        this.base = base;
+        this.logger = logger;
+        this.window = window;
+        this.diffMode = diffMode;
+        this.mergePolicy = mergePolicy;
+        this.countLines = countLines;
+        this.blobCache = blobCache;
+        this.store = store;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "diff-prefetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readers = ThreadLocal.withInitial(() -> {
+            ObjectReader reader = blobCache.wrap(gitManager.newObjectReader());
+            createdReaders.add(reader);
+            return reader;
+        });
+        this.formatters = ThreadLocal.withInitial(() -> {
+            DiffFormatter formatter = gitManager.newDiffFormatter(readers.get());
+            createdFormatters.add(formatter);
+            return formatter;
+        });
+        fill();
+    }
+
+    /**
+     * Sets the persistent cache of the lines added and deleted between two blobs, shared by all the prefetchers.
+     *
+     * @param cache the cache, or null to always count the lines
+     */
+    public static void setLocStatsCache(LocStatsCache cache) {
+        locStatsCache = cache;
+    }
+
+    /**
+     * @return the diff of the next commit of the log
+     * @throws IOException            if the diff could not be computed
+     * @throws NoSuchElementException if all the commits have been already returned
+     */
+    public CommitDiff next() throws IOException {
+        Future<CommitDiff> future = pending.poll();
+        if (future == null)
+            throw new NoSuchElementException();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a diff");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException)
+                throw ioException;
+            throw new IOException("Error computing a diff", e.getCause());
+        } finally {
+            fill();
+        }
+    }
+
+    private void fill() {
+        while (pending.size() < window && submitted < commits.size()) {
+            ObjectId previous = submitted == 0 ? base : commits.get(submitted - 1);
+            ObjectId current = commits.get(submitted);
+            pending.add(pool.submit(() -> diff(previous, current)));
+            submitted++;
+        }
+    }
+
+    private CommitDiff diff(ObjectId previous, ObjectId current) throws IOException {
+        // in first-parent mode the diff does not depend on the previous commit of the log
+        ObjectId storedPrevious = diffMode == DiffMode.CHRONOLOGICAL ? previous : null;
+        // the walk only shares the reader of the thread: the commits it parses are released with the diff
+        try (RevWalk walk = new RevWalk(readers.get())) {
+            // the consumer reads the author of the commit
+            RevCommit currentCommit = walk.parseCommit(current);
+            if (store != null) {
+                List<FileDiff> stored = store.lookup(storedPrevious, currentCommit);
+                if (stored != null)
+                    return new CommitDiff(currentCommit, stored);
+            }
+            DiffFormatter df = formatters.get();
+            List<DiffEntry> entries;
+            if (diffMode == DiffMode.CHRONOLOGICAL) {
+                entries = gitManager.makeDiff(df, previous == null ? null : walk.parseCommit(previous), currentCommit);
+            } else {
+                for (RevCommit parent : currentCommit.getParents()) {
+                    walk.parseHeaders(parent);
+                }
+                if (currentCommit.getParentCount() <= 1 || mergePolicy == MergePolicy.FIRST_PARENT)
+                    entries = gitManager.makeDiffWithParent(df, currentCommit, 0);
+                else if (mergePolicy == MergePolicy.COMBINED)
+                    entries = gitManager.makeCombinedDiff(df, currentCommit);
+                else
+                    entries = List.of();
+            }
+            List<FileDiff> files = new ArrayList<>(entries.size());
+            for (DiffEntry entry : entries) {
+                if (countLines && (entry.getChangeType() == DiffEntry.ChangeType.ADD
+                        || entry.getChangeType() == DiffEntry.ChangeType.MODIFY))
+                    files.add(countLines(df, entry));
+                else
+                    files.add(new FileDiff(entry, 0, 0));
+            }
+            if (store != null)
+                store.put(storedPrevious, currentCommit, files);
+            return new CommitDiff(currentCommit, files);
+        }
+    }
+
+    private FileDiff countLines(DiffFormatter df, DiffEntry entry) {
+        LocStatsCache cache = locStatsCache;
+        boolean cacheable = cache != null && entry.getOldId().isComplete() && entry.getNewId().isComplete();
+        if (cacheable) {
+            LocStatsCache.LocStats stats = cache.lookup(entry.getOldId().toObjectId(), entry.getNewId().toObjectId());
+            if (stats != null)
+                return new FileDiff(entry, stats.linesAdded(), stats.linesDeleted());
+        }
+
+        int linesAdded = 0;
+        int linesDeleted = 0;
+        try {
+            List<Edit> edits = df.toFileHeader(entry).toEditList();
+            for (Edit edit : edits) {
+                switch (edit.getType()) {
+                    case INSERT:// new LOC have been inserted
+                        linesAdded += edit.getLengthB() - edit.getLengthA();
+                        break;
+
+                    case DELETE: // LOC have been deleted
+                        linesDeleted += edit.getLengthA() - edit.getLengthB();
+                        break;
+
+                    case REPLACE:
+                        //LOCs have been modified
+                        if (edit.getLengthA() < edit.getLengthB()) {
+                            // the new version is bigger; so we have added lines
+                            linesAdded += edit.getLengthB() - edit.getLengthA();
+                        } else if (edit.getLengthA() > edit.getLengthB()) {
+                            // deleted lines
+                            linesDeleted += edit.getLengthA() - edit.getLengthB();
+                        }
+                        break;
+
+                    default:
+                        // do nothing
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            logger.info("IOException computing LOCs");
+            return new FileDiff(entry, 0, 0);
+        }
+        if (cacheable)
+            cache.put(entry.getOldId().toObjectId(), entry.getNewId().toObjectId(), linesAdded, linesDeleted);
+        return new FileDiff(entry, linesAdded, linesDeleted);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        try {
+            if (!pool.awaitTermination(1, TimeUnit.MINUTES))
+                logger.warning("Diff threads did not terminate");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (createdFormatters) {
+            for (DiffFormatter formatter : createdFormatters) {
+                formatter.close();
+            }
+        }
+        synchronized (createdReaders) {
+            for (ObjectReader reader : createdReaders) {
+                reader.close();
+            }
+        }
+    }
+}
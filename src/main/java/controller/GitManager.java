@@ -1,23 +1,30 @@
 package controller;
 
+import git.PathGlobFilter;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.diff.RawTextComparator;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.EmptyTreeIterator;
-import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class GitManager {
 
+    // by default only java files are analyzed, excluding tests
+    private static volatile TreeFilter pathFilter = PathGlobFilter.create(List.of("**/*.java"), List.of("**/test*"));
+
     private final Git git;
     private DiffFormatter df;
 
@@ -25,26 +32,100 @@ public class GitManager {
         this.git = git;
     }
 
+    public Git getGit() {
+        return git;
+    }
+
     public List<DiffEntry> makeDiff(RevCommit previous, RevCommit current) throws IOException {
+        return makeDiff(this.df, previous, current);
+    }
+
+    /**
+     * Sets the rules of the files to analyze, used by all the diff formatters created afterwards.
+     *
+     * @param filter the filter of the paths of the repository
+     */
+    public static void setPathFilter(TreeFilter filter) {
+        pathFilter = filter;
+    }
+
+    public static TreeFilter getPathFilter() {
+        return pathFilter;
+    }
+
+    /**
+     * Diff between two commits with the given formatter; only files accepted by the path filter are compared.
+     * Each thread computing diffs must use its own formatter (see {@link #newDiffFormatter()}).
+     *
+     * @param df       the diff formatter
+     * @param previous the previous commit, or null if the current commit is the first one
+     * @param current  the current commit
+     * @return the diff entries
+     */
+    public List<DiffEntry> makeDiff(DiffFormatter df, RevCommit previous, RevCommit current) throws IOException {
 
         List<DiffEntry> entries;
         if (previous == null) {
             // the previous commit doesn't exist, so the newCommit is the first one
             AbstractTreeIterator oldTreeIterator = new EmptyTreeIterator();
-            ObjectReader reader = git.getRepository().newObjectReader();
-            AbstractTreeIterator newTreeIterator = new CanonicalTreeParser(null, reader, current.getTree());
+            try (ObjectReader reader = git.getRepository().newObjectReader()) {
+                AbstractTreeIterator newTreeIterator = new CanonicalTreeParser(null, reader, current.getTree());
 
-            entries = df.scan(oldTreeIterator, newTreeIterator);
+                entries = df.scan(oldTreeIterator, newTreeIterator);
+            }
 
         } else {
             entries = df.scan(previous.getTree(), current.getTree());
         }
 
-        // remove test files
-        List<DiffEntry> entriesWithNoTest = new ArrayList<>(entries);
-        entriesWithNoTest.removeIf(entry -> entry.getNewPath().contains("/test") || entry.getOldPath().contains("/test"));
-        return entriesWithNoTest;
+        return entries;
+
+    }
 
+    /**
+     * Diff between a commit and one of its parents; a commit with no parents is compared to the empty tree.
+     *
+     * @param df     the diff formatter
+     * @param commit the commit
+     * @param parent the index of the parent
+     * @return the diff entries
+     */
+    public List<DiffEntry> makeDiffWithParent(DiffFormatter df, RevCommit commit, int parent) throws IOException {
+        if (commit.getParentCount() == 0)
+            return makeDiff(df, null, commit);
+        RevCommit parentCommit = commit.getParent(parent);
+        if (parentCommit.getTree() == null) {
+            // the parent has not been parsed by the walk that produced the commit
+            try (RevWalk walk = new RevWalk(git.getRepository())) {
+                parentCommit = walk.parseCommit(parentCommit);
+            }
+        }
+        return makeDiff(df, parentCommit, commit);
+    }
+
+    /**
+     * Combined diff of a merge commit: only the files that differ from every parent, i.e. the ones
+     * changed while merging, are kept. The entries are the ones of the diff with the first parent.
+     *
+     * @param df     the diff formatter
+     * @param commit the merge commit
+     * @return the diff entries
+     */
+    public List<DiffEntry> makeCombinedDiff(DiffFormatter df, RevCommit commit) throws IOException {
+        List<DiffEntry> entries = makeDiffWithParent(df, commit, 0);
+        for (int parent = 1; parent < commit.getParentCount() && !entries.isEmpty(); parent++) {
+            Set<String> changedPaths = new HashSet<>();
+            for (DiffEntry entry : makeDiffWithParent(df, commit, parent)) {
+                changedPaths.add(changedPath(entry));
+            }
+            entries = new ArrayList<>(entries);
+            entries.removeIf(entry -> !changedPaths.contains(changedPath(entry)));
+        }
+        return entries;
+    }
+
+    private static String changedPath(DiffEntry entry) {
+        return entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
     }
 
     public DiffFormatter getDiffFormatter(){
@@ -52,13 +133,42 @@ public class GitManager {
     }
 
     public void setDiffFormatter(){
-        df = new DiffFormatter(DisabledOutputStream.INSTANCE);
-        df.setRepository(git.getRepository());
-        df.setDiffComparator(RawTextComparator.DEFAULT);
-        // filter only java files
-        df.setPathFilter(PathSuffixFilter.create(".java"));
+        df = newDiffFormatter();
+    }
+
+    /**
+     * @return a new diff formatter, with its own object reader, that filters the files to analyze and detects renames
+     */
+    public DiffFormatter newDiffFormatter(){
+        DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
+        formatter.setRepository(git.getRepository());
+        return configure(formatter);
+    }
+
+    /**
+     * @param reader the reader used to load trees and blobs; it is not closed by the formatter
+     * @return a new diff formatter on the given reader, that filters the files to analyze and detects renames
+     */
+    public DiffFormatter newDiffFormatter(ObjectReader reader){
+        DiffFormatter formatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
+        formatter.setReader(reader, git.getRepository().getConfig());
+        return configure(formatter);
+    }
+
+    /**
+     * @return a new reader of the objects of the repository
+     */
+    public ObjectReader newObjectReader(){
+        return git.getRepository().newObjectReader();
+    }
+
+    private static DiffFormatter configure(DiffFormatter formatter){
+        formatter.setDiffComparator(RawTextComparator.DEFAULT);
+        // filter the files to analyze; excluded directories are not even walked
+        formatter.setPathFilter(pathFilter);
         // set the detection of renamed files
-        df.setDetectRenames(true);
+        formatter.setDetectRenames(true);
+        return formatter;
     }
 
 }
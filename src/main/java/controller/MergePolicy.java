@@ -0,0 +1,13 @@
+package controller;
+
+/**
+ * How merge commits are compared to their parents in {@link DiffMode#FIRST_PARENT} mode.
+ */
+public enum MergePolicy {
+    // merges change nothing: the changes are counted in the commits of the merged branches
+    SKIP,
+    // merges are compared to their first parent, like any other commit
+    FIRST_PARENT,
+    // only the files that differ from every parent, i.e. the ones changed while merging
+    COMBINED
+}
@@ -5,13 +5,14 @@ import exceptions.CommitWithNoReleaseException;
 import jira.RetrieveReleases;
 import main.Main;
 import model.Bug;
+import model.ReleaseTimeline;
 import org.eclipse.jgit.revwalk.RevCommit;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,14 +20,12 @@ import static java.lang.Math.round;
 
 public class VersionManager {
 
-    private Map<String, LocalDate> versions;
+    private ReleaseTimeline timeline;
     private Map<String, LocalDate> halfVersions;
     private final String projectName;
     private static final String RELEASES_PATH = "_releases.csv";
     private final Logger logger;
 
-    private String[] versionsArray;
-
     /*
     p = (FV - IV) / (FV - OV)
     predicted IV = FV - (FV - OV) * p
@@ -56,12 +55,11 @@ public class VersionManager {
             releases.sort(Map.Entry.comparingByValue());
 
             Map<String, LocalDate> sortedVersions = new LinkedHashMap<>();
-            List<LocalDate> addedDates = new ArrayList<>();
+            Set<LocalDate> addedDates = new HashSet<>();
             for (Map.Entry<String, LocalDate> entry : releases) {
-                if (!addedDates.contains(entry.getValue())) {
+                if (addedDates.add(entry.getValue())) {
                     // remove releases that have the same release date
                     sortedVersions.put(entry.getKey(), entry.getValue());
-                    addedDates.add(entry.getValue());
                 }
 
             }
@@ -86,53 +84,69 @@ public class VersionManager {
                 }
             }
 
-            this.versions = sortedVersions;
+            this.timeline = new ReleaseTimeline(new ArrayList<>(sortedVersions.entrySet()));
             this.halfVersions = halfReleases;
-            LocalDate latestDate = null;
-            Iterator<Map.Entry<String, LocalDate>> iterator = sortedVersions.entrySet().iterator();
-            while (iterator.hasNext())
-                latestDate = iterator.next().getValue();
-            assert latestDate != null;
+            LocalDate latestDate = this.timeline.releaseDateOf(this.timeline.size() - 1);
             this.latestReleaseDate = Date.from(latestDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
-            this.versionsArray = new String[this.versions.size()];
-            int i = 0;
-            for (Map.Entry<String, LocalDate> entry : this.versions.entrySet()) {
-                this.versionsArray[i] = entry.getKey();
-                i++;
-            }
         } catch (IOException e) {
             Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Exception", e);
         }
     }
 
+    /**
+     * Partitions the commits by release with a single merge-style sweep: a commit belongs to the first release
+     * whose release day is equal or after the (local) day of the commit, so each release is closed by the first
+     * second of the day following its release date.
+     * Commits after the latest release are part of the still unreleased version and are removed from the input list.
+     *
+     * @param allCommits commits sorted by ascending commit time
+     * @return mapping of each release with commits to a view over its range of the input list
+     */
     public Map<String, List<RevCommit>> splitCommitsPerRelease(List<RevCommit> allCommits) {
-        String commitDate;
-        String release;
-        List<RevCommit> commitsToRemove = new ArrayList<>();
+        return splitCommitsPerRelease(allCommits, RevCommit::getCommitTime);
+    }
 
-        Map<String, List<RevCommit>> ret = new LinkedHashMap<>();
-        for (RevCommit c : allCommits) {
-            commitDate = new SimpleDateFormat("yyyy-MM-dd").format(new Date(c.getCommitTime() * 1000L));
-            try {
-                release = findVersionByDate(commitDate);
-
-                if (ret.containsKey(release))
-                    ret.get(release).add(c);
-                else {
-                    List<RevCommit> commitsOfTheRelease = new ArrayList<>();
-                    commitsOfTheRelease.add(c);
-                    ret.put(release, commitsOfTheRelease);
-                }
-            } catch (CommitWithNoReleaseException e) {
-                // if the commit has no release, let's remove it from the RevCommit list
-                commitsToRemove.add(c);
-            }
+    /**
+     * As {@link #splitCommitsPerRelease(List)}, for commits whose time is read elsewhere (e.g. ids in the commit table).
+     *
+     * @param allCommits commits sorted by ascending commit time
+     * @param commitTime the commit time of each commit
+     * @return mapping of each release with commits to a view over its range of the input list
+     */
+    public <C> Map<String, List<C>> splitCommitsPerRelease(List<C> allCommits, ToIntFunction<? super C> commitTime) {
+        ZoneId zone = ZoneId.systemDefault();
+        long[] releaseEnds = new long[timeline.size()];
+        for (int r = 0; r < releaseEnds.length; r++) {
+            releaseEnds[r] = LocalDate.ofEpochDay(timeline.epochDayOf(r) + 1).atStartOfDay(zone).toEpochSecond();
         }
 
-        for (RevCommit c : commitsToRemove) {
-            allCommits.remove(c);
+        int[] releaseOffsets = new int[releaseEnds.length + 1];
+        int release = 0;
+        int i = 0;
+        int previousTime = Integer.MIN_VALUE;
+        for (; i < allCommits.size(); i++) {
+            int time = commitTime.applyAsInt(allCommits.get(i));
+            if (time < previousTime)
+                throw new IllegalArgumentException("Commits must be sorted by ascending commit time");
+            previousTime = time;
+            while (release < releaseEnds.length && time >= releaseEnds[release]) {
+                releaseOffsets[++release] = i;
+            }
+            if (release == releaseEnds.length)
+                break;
         }
+        while (release < releaseEnds.length) {
+            releaseOffsets[++release] = i;
+        }
+
+        // if the commit has no release, let's remove it from the RevCommit list
+        allCommits.subList(i, allCommits.size()).clear();
 
+        Map<String, List<C>> ret = new LinkedHashMap<>();
+        for (int r = 0; r < releaseEnds.length; r++) {
+            if (releaseOffsets[r + 1] > releaseOffsets[r])
+                ret.put(timeline.nameOf(r), allCommits.subList(releaseOffsets[r], releaseOffsets[r + 1]));
+        }
         return ret;
     }
 
@@ -210,26 +224,20 @@ public class VersionManager {
 
     private List<String> computeAffectedVersions(String injectedVersion, String fixVersion) {
         List<String> aff = new ArrayList<>();
-        boolean addToList = false;
-        for (String s : this.versionsArray) {
-            if (s.equals(injectedVersion))
-                addToList = true;
-            if (s.equals(fixVersion)) {
-                return aff;
-            }
-            if (addToList)
-                aff.add(s);
+        int injected = timeline.idOf(injectedVersion);
+        if (injected < 0)
+            return aff;
+        // affected versions go from the injected version (included) to the fixed one (excluded)
+        int fixed = timeline.idOf(fixVersion);
+        int end = fixed < 0 ? timeline.size() : fixed;
+        for (int i = injected; i < end; i++) {
+            aff.add(timeline.nameOf(i));
         }
         return aff;
     }
 
     private int findIndexOfVersion(String version) {
-        for (int i = 0; i < this.versionsArray.length; i++) {
-            if (this.versionsArray[i].equals(version)) {
-                return i;
-            }
-        }
-        return -1;
+        return timeline.idOf(version);
     }
 
     private String findInjectedVersionUsingProportion(Bug bug) {
@@ -241,7 +249,7 @@ public class VersionManager {
         // predicted IV = FV - (FV - OV) * p
         if (indexInjected < 0)
             indexInjected = 0;
-        return this.versionsArray[indexInjected];
+        return this.timeline.nameOf(indexInjected);
     }
 
     private boolean areValidAffectedVersions(Bug bug) {
@@ -254,16 +262,14 @@ public class VersionManager {
             return false;
         }
         // remove releases not considered
-        affVersions.removeIf(s -> !this.versions.containsKey(s));
+        affVersions.removeIf(s -> !this.timeline.contains(s));
         if (affVersions.isEmpty()) {
             return false;
         }
         String injectedVersion = findInjectedVersion(affVersions);
 
         // if the injected version is after the opening version
-        LocalDate injectedDate = this.versions.get(injectedVersion);
-        LocalDate openingDate = this.versions.get(bug.getOpeningVersion());
-        if (injectedDate.isAfter(openingDate)) {
+        if (isAfterVersion(injectedVersion, bug.getOpeningVersion())) {
             bug.setAffectedVersions(new ArrayList<>());
             return false;
         }
@@ -272,80 +278,78 @@ public class VersionManager {
     }
 
     private String findInjectedVersion(List<String> affVersions) {
-        for (Map.Entry<String, LocalDate> release : this.versions.entrySet()) {
-            // since releases are ordered by date, the first one that is in the affected versions list is the injected version
-            if (affVersions.contains(release.getKey())) {
-                return release.getKey();
-            }
+        // since releases are ordered by date, the oldest one in the affected versions list is the injected version
+        int injected = -1;
+        for (String version : affVersions) {
+            int id = timeline.idOf(version);
+            if (id >= 0 && (injected < 0 || id < injected))
+                injected = id;
         }
-        return null;
+        return injected < 0 ? null : timeline.nameOf(injected);
     }
 
 
     /**
-     * Iterates the linked (and sorted) list of versions until it finds one that has
+     * Binary search, in the sorted timeline of versions, of the first one that has
      * a release date that is equal or after the input date. In that case, that is the version.
      *
      * @param date String in 'yyyy-MM-dd' format of the date
      * @return the name of the OV
      */
     public String findVersionByDate(String date) throws CommitWithNoReleaseException {
-        LocalDate openDate = LocalDate.parse(date);
-        String result = null;
-        for (Map.Entry<String, LocalDate> entry : this.versions.entrySet()) {
-            if (entry.getValue().isEqual(openDate) || entry.getValue().isAfter(openDate)) {
-                result = entry.getKey();
-                break;
-            }
-        }
-        if (result == null) {
+        return findVersionByEpochDay(LocalDate.parse(date).toEpochDay());
+    }
+
+    /**
+     * @param epochDay the date, as days from the epoch
+     * @return the name of the first version released on the date or after it
+     * @see #findVersionByDate(String)
+     */
+    public String findVersionByEpochDay(long epochDay) throws CommitWithNoReleaseException {
+        int id = this.timeline.findIdByEpochDay(epochDay);
+        if (id < 0) {
             // date is after the date of the latest released version, so it's part of the current release
             throw new CommitWithNoReleaseException("No release found for the commit; probably it's parte of the still unreleased version!");
         }
-        return result;
+        return this.timeline.nameOf(id);
     }
 
     public boolean isAfterVersion(String versionName, String targetVersion) {
-        LocalDate versionDate = null;
-        LocalDate targetDate = null;
-        for (Map.Entry<String, LocalDate> entry : this.versions.entrySet()) {
-            if (entry.getKey().equals(versionName)) {
-                versionDate = entry.getValue();
-            }
-            if (entry.getKey().equals(targetVersion)) {
-                targetDate = entry.getValue();
-            }
-            if (versionDate != null && targetDate != null)
-                break;
-        }
-        assert versionDate != null;
-        assert targetDate != null;
-        return versionDate.isAfter(targetDate);
+        int versionId = timeline.idOf(versionName);
+        int targetId = timeline.idOf(targetVersion);
+        assert versionId >= 0;
+        assert targetId >= 0;
+        // release dates are strictly increasing along the timeline
+        return versionId > targetId;
     }
 
 
     public String findNextVersion(String version) {
-        for (int i = 0; i < versionsArray.length - 1; i++) {
-            if (versionsArray[i].equals(version))
-                return versionsArray[i + 1];
+        int id = timeline.idOf(version);
+        if (id < 0 || id == timeline.size() - 1) {
+            // the latest version
+            return null;
         }
-        // the latest version
-        return null;
+        return timeline.nameOf(id + 1);
     }
 
     public int getReleasesSize() {
-        return this.versions.size();
+        return this.timeline.size();
     }
 
     public Map<String, LocalDate> getHalfVersions() {
         return this.halfVersions;
     }
 
+    /**
+     * @return the immutable timeline of the releases, which can be shared across threads
+     */
+    public ReleaseTimeline getTimeline() {
+        return this.timeline;
+    }
+
     public LocalDate getReleaseDateOfVersion(String version) {
-        for (Map.Entry<String, LocalDate> entry : this.versions.entrySet()) {
-            if (entry.getKey().equals(version))
-                return entry.getValue();
-        }
-        return null;
+        int id = timeline.idOf(version);
+        return id < 0 ? null : timeline.releaseDateOf(id);
     }
 }
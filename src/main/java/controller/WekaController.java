@@ -11,14 +11,18 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 
 public class WekaController {
 
-    private static final String TESTING_OUTPUT = "testing.arff";
-    private static final String TRAINING_OUTPUT = "training.arff";
+    private static final String TESTING_OUTPUT = "_testing.arff";
+    private static final String TRAINING_OUTPUT = "_training.arff";
     private final String projectName;
+    // arff files are prefixed by the project, so that projects can be analyzed concurrently
+    private final String trainingOutput;
+    private final String testingOutput;
     private final Map<String, List<DatasetInstance>> datasetPerRelease;
     private final String[] datasetHeader;
     private final int numReleases;
@@ -28,6 +32,8 @@ public class WekaController {
 
     public WekaController(String projectName, Map<String, List<DatasetInstance>> datasetsWithSnoring, String[] datasetHeader) {
         this.projectName = projectName;
+        this.trainingOutput = projectName.toLowerCase(Locale.ROOT) + TRAINING_OUTPUT;
+        this.testingOutput = projectName.toLowerCase(Locale.ROOT) + TESTING_OUTPUT;
         this.datasetsWithSnoring = datasetsWithSnoring;
         this.datasetHeader = datasetHeader;
         this.numReleases = datasetsWithSnoring.size();
@@ -75,11 +81,11 @@ public class WekaController {
             // generate arff files for training and testing
             try {
                 relationName = this.projectName + "_training";
-                ArffGenerator.generateArffFromDataset(datasetHeader, trainingSet, relationName, TRAINING_OUTPUT);
+                ArffGenerator.generateArffFromDataset(datasetHeader, trainingSet, relationName, trainingOutput);
 
                 relationName = this.projectName + "_testing";
-                ArffGenerator.generateArffFromDataset(datasetHeader, testingSet, relationName, TESTING_OUTPUT);
-                evaluationToBeAdded.addAll(evaluator.evaluateClassifiers(TRAINING_OUTPUT, TESTING_OUTPUT, costSensitivity));
+                ArffGenerator.generateArffFromDataset(datasetHeader, testingSet, relationName, testingOutput);
+                evaluationToBeAdded.addAll(evaluator.evaluateClassifiers(trainingOutput, testingOutput, costSensitivity));
                 for (ClassifierEvaluation ce : evaluationToBeAdded) {
                     ce.setNumTrainingRelease(trainingSetSize);
                     ce.setPercTraining(percTraining);
@@ -0,0 +1,122 @@
+package git;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least-recently-used cache of the content of blobs, bounded by the total size of the cached contents.
+ * It is used through object readers returned by {@link #wrap(ObjectReader)}: with a diff formatter built on such
+ * a reader, the blobs loaded to score renames are reused to compute the edit lists, and vice versa.
+ * The cache is thread-safe, so it can be shared by the readers of different threads.
+ */
+public class BlobCache {
+
+    private final long maxBytes;
+    private final long maxBlobBytes;
+    private final Map<ObjectId, byte[]> blobs = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxBytes maximum total size of the cached blobs; a single blob is cached only
+     *                 if it is not bigger than a quarter of it
+     */
+    public BlobCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maxBlobBytes = maxBytes / 4;
+    }
+
+    /**
+     * @param reader the reader of the repository; it is closed together with the returned reader
+     * @return a reader that serves blobs from this cache, filling it on misses
+     */
+    public ObjectReader wrap(ObjectReader reader) {
+        return new CachingReader(reader);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private synchronized byte[] get(AnyObjectId id) {
+        return blobs.get(id);
+    }
+
+    private synchronized void put(AnyObjectId id, byte[] content) {
+        if (content.length > maxBlobBytes || blobs.containsKey(id))
+            return;
+        blobs.put(id.copy(), content);
+        bytes += content.length;
+        Iterator<byte[]> eldest = blobs.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private final class CachingReader extends ObjectReader.Filter {
+        private final ObjectReader delegate;
+
+        private CachingReader(ObjectReader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected ObjectReader delegate() {
+            return delegate;
+        }
+
+        @Override
+        public ObjectReader newReader() {
+            return new CachingReader(delegate.newReader());
+        }
+
+        @Override
+        public ObjectLoader open(AnyObjectId objectId) throws IOException {
+            return open(objectId, OBJ_ANY);
+        }
+
+        @Override
+        public ObjectLoader open(AnyObjectId objectId, int typeHint) throws IOException {
+            if (typeHint != OBJ_ANY && typeHint != Constants.OBJ_BLOB)
+                return delegate.open(objectId, typeHint);
+            byte[] content = get(objectId);
+            if (content != null) {
+                hits.increment();
+                return new ObjectLoader.SmallObject(Constants.OBJ_BLOB, content);
+            }
+            ObjectLoader loader = delegate.open(objectId, typeHint);
+            if (loader.getType() != Constants.OBJ_BLOB || loader.isLarge() || loader.getSize() > maxBlobBytes)
+                return loader;
+            misses.increment();
+            content = loader.getCachedBytes();
+            put(objectId, content);
+            return new ObjectLoader.SmallObject(Constants.OBJ_BLOB, content);
+        }
+
+        @Override
+        public long getObjectSize(AnyObjectId objectId, int typeHint) throws MissingObjectException, IOException {
+            if (typeHint == OBJ_ANY || typeHint == Constants.OBJ_BLOB) {
+                byte[] content = get(objectId);
+                if (content != null)
+                    return content.length;
+            }
+            return delegate.getObjectSize(objectId, typeHint);
+        }
+    }
+}
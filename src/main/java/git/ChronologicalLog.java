@@ -0,0 +1,78 @@
+package git;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.RandomAccess;
+
+/**
+ * Log of the commits in a range of dates, in ascending commit time, read from the {@link CommitTable} instead of
+ * walking the history and sorting the walked commits. The range is pushed down to the table: the rows sorted by
+ * commit time are cut with two binary searches, and the log is a read-only view over them, so no commit is parsed
+ * and only the ids of the requested commits are ever built (one at each {@link #get(int)}).
+ * <p>
+ * Commits with the same commit time keep the order of the table, as in {@link CommitTable#getRowsByCommitTime()}.
+ */
+public class ChronologicalLog extends AbstractList<ObjectId> implements RandomAccess {
+
+    private final CommitTable table;
+    private final int[] rows;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param table the commit table of the repository
+     * @param since the minimum commit time (included), or null for no limit
+     * @param until the maximum commit time (included), or null for no limit
+     */
+    public ChronologicalLog(CommitTable table, Date since, Date until) {
+        this.table = table;
+        this.rows = table.getRowsByCommitTime();
+        // commit times are in seconds: a commit is in the range if its whole second is
+        this.from = since == null ? 0 : firstAfter(-Math.floorDiv(-since.getTime(), 1000) - 1);
+        this.to = until == null ? rows.length : Math.max(from, firstAfter(Math.floorDiv(until.getTime(), 1000)));
+    }
+
+    @Override
+    public ObjectId get(int index) {
+        return table.getId(getRow(index));
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * @return the row in the commit table of the commit at the given position of the log
+     */
+    public int getRow(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException(index);
+        return rows[from + index];
+    }
+
+    /**
+     * @return the commit time of the commit at the given position of the log
+     */
+    public int getCommitTime(int index) {
+        return table.getCommitTime(getRow(index));
+    }
+
+    /**
+     * @return the position in the sorted rows of the first commit whose time is after the given one
+     */
+    private int firstAfter(long time) {
+        int low = 0;
+        int high = rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (table.getCommitTime(rows[mid]) <= time)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,398 @@
+package git;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent table of the metadata of the commits reachable from HEAD: id, parents, commit time, author and
+ * the Jira ticket keys found in the message. It replaces the walk of the whole history at each run: the table
+ * is extended with the commits added since the HEAD it was built for, so only those are parsed, and the log,
+ * the commit times and the ticket index are read from the mapped file.
+ * <p>
+ * The file is memory-mapped read-only, so the table is not copied on the heap. When HEAD moves, a new generation of
+ * the file (see {@link GenerationFiles}) with the old rows followed by the new ones is published, so a table that
+ * is still mapped is never replaced; if the old HEAD is not an ancestor of the new one (e.g. the history has been
+ * rewritten) the table is built again from scratch.
+ * <p>
+ * Layout: a header (magic, format version, number of commits, of parent references, of ticket key references,
+ * of authors, of ticket keys and of index slots, HEAD id) followed by the rows of 36 bytes (commit id, commit time,
+ * author, end of its parents and end of its ticket keys in the arrays of references), the id index (open addressing,
+ * row + 1 in each used slot), the parent rows, the ticket key ids and the dictionaries of the authors and of the
+ * ticket keys (length-prefixed UTF-8 strings).
+ */
+public class CommitTable {
+
+    private static final int MAGIC = 0x434D5454; // "CMTT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 52;
+    private static final int ROW_SIZE = 36;
+    private static final int ID_SIZE = 20;
+    private static final int MIN_SLOTS = 1024;
+    // keys of any Jira project: the matches of GitAnalyzer.compileTicketKeyPattern for any set of projects are
+    // among these, with the same word boundaries, so the table is queried matching the stored keys again
+    private static final Pattern TICKET_KEY_PATTERN = Pattern.compile("\\b[A-Z][A-Z0-9_]*-\\d+\\b");
+
+    // a commit to add, with the metadata read from its body, that is not retained
+    private record AddedCommit(RevCommit commit, String author, Set<String> ticketKeys) {
+    }
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int slots;
+    private final int indexOffset;
+    private final int parentsOffset;
+    private final int keysOffset;
+    private final ObjectId head;
+    private final String[] authors;
+    private final String[] keys;
+
+    private CommitTable(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.slots = buffer.getInt(28);
+        this.indexOffset = HEADER_SIZE + count * ROW_SIZE;
+        this.parentsOffset = indexOffset + slots * 4;
+        this.keysOffset = parentsOffset + buffer.getInt(12) * 4;
+        byte[] raw = new byte[ID_SIZE];
+        buffer.get(32, raw);
+        this.head = ObjectId.fromRaw(raw);
+        this.authors = new String[buffer.getInt(20)];
+        this.keys = new String[buffer.getInt(24)];
+        int offset = keysOffset + buffer.getInt(16) * 4;
+        offset = readStrings(buffer, offset, authors);
+        readStrings(buffer, offset, keys);
+    }
+
+    /**
+     * Opens the table of the repository, extending it (in a new generation of the file) if HEAD has moved.
+     *
+     * @param file       the file of the table; if it does not exist (or it is not a valid table) it is created
+     * @param repository the repository
+     * @return the table of the commits reachable from the current HEAD
+     */
+    public static CommitTable open(Path file, Repository repository) throws IOException {
+        GenerationFiles.Loaded<CommitTable> current = GenerationFiles.readLatest(file, CommitTable::map);
+        CommitTable table = current.content();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null)
+            return empty();
+        if (table != null && head.equals(table.head))
+            return table;
+
+        try (RevWalk walk = new RevWalk(repository)) {
+            RevCommit start = walk.parseCommit(head);
+            if (table != null && !isAncestor(walk, table.head, start))
+                table = null;
+            walk.reset();
+            walk.markStart(start);
+            if (table != null)
+                walk.markUninteresting(walk.parseCommit(table.head));
+            List<AddedCommit> added = new ArrayList<>();
+            for (RevCommit commit : walk) {
+                // the walk may return again a few commits reachable from the old HEAD
+                if (table == null || table.rowOf(commit) < 0)
+                    added.add(new AddedCommit(commit, commit.getAuthorIdent().getName(),
+                            GitAnalyzer.extractTicketKeys(commit.getFullMessage(), TICKET_KEY_PATTERN)));
+                commit.disposeBody();
+            }
+            long generation = GenerationFiles.publish(file, write(table, added, head), current.generation());
+            CommitTable extended = map(GenerationFiles.pathOf(file, generation));
+            if (extended == null)
+                throw new IOException("Commit table not readable after writing it: " + file);
+            return extended;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the HEAD the table has been built for
+     */
+    public ObjectId getHead() {
+        return head;
+    }
+
+    public ObjectId getId(int row) {
+        byte[] raw = new byte[ID_SIZE];
+        buffer.get(HEADER_SIZE + row * ROW_SIZE, raw);
+        return ObjectId.fromRaw(raw);
+    }
+
+    public int getCommitTime(int row) {
+        return buffer.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE);
+    }
+
+    /**
+     * @return the name of the author of the commit
+     */
+    public String getAuthor(int row) {
+        return authors[buffer.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 4)];
+    }
+
+    /**
+     * @return the rows of the parents of the commit, in the order of the commit
+     */
+    public int[] getParents(int row) {
+        int start = row == 0 ? 0 : buffer.getInt(HEADER_SIZE + (row - 1) * ROW_SIZE + ID_SIZE + 8);
+        int end = buffer.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 8);
+        int[] parents = new int[end - start];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = buffer.getInt(parentsOffset + (start + i) * 4);
+        }
+        return parents;
+    }
+
+    /**
+     * @return the distinct Jira ticket keys (of any project) found in the message of the commit, in order of appearance;
+     * the keys of given projects are found matching them with {@link GitAnalyzer#compileTicketKeyPattern(Collection)}
+     */
+    public List<String> getTicketKeys(int row) {
+        int start = row == 0 ? 0 : buffer.getInt(HEADER_SIZE + (row - 1) * ROW_SIZE + ID_SIZE + 12);
+        int end = buffer.getInt(HEADER_SIZE + row * ROW_SIZE + ID_SIZE + 12);
+        List<String> ticketKeys = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            ticketKeys.add(keys[buffer.getInt(keysOffset + i * 4)]);
+        }
+        return ticketKeys;
+    }
+
+    /**
+     * @return the row of the commit, or -1 if it is not in the table
+     */
+    public int rowOf(AnyObjectId id) {
+        if (count == 0)
+            return -1;
+        byte[] raw = new byte[ID_SIZE];
+        id.copyRawTo(raw, 0);
+        for (int slot = hash(id) & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            int row = buffer.getInt(indexOffset + slot * 4) - 1;
+            if (row < 0)
+                return -1;
+            if (sameId(buffer, HEADER_SIZE + row * ROW_SIZE, raw))
+                return row;
+        }
+    }
+
+    /**
+     * @return the rows sorted by ascending commit time; commits with the same time keep the order of the table,
+     * that is the order of the walk from HEAD
+     */
+    public int[] getRowsByCommitTime() {
+        long[] sorted = new long[count];
+        for (int row = 0; row < count; row++) {
+            sorted[row] = (long) getCommitTime(row) << 32 | row;
+        }
+        Arrays.sort(sorted);
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) sorted[i];
+        }
+        return rows;
+    }
+
+    private static CommitTable empty() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(28, 1);
+        return new CommitTable(buffer);
+    }
+
+    private static CommitTable map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+                // not a valid table: it is built again
+                return null;
+            return new CommitTable(buffer);
+        } catch (RuntimeException e) {
+            // a truncated table is built again as well
+            return null;
+        }
+    }
+
+    private static boolean isAncestor(RevWalk walk, ObjectId cachedHead, RevCommit head) throws IOException {
+        if (!walk.getObjectReader().has(cachedHead))
+            return false;
+        return walk.isMergedInto(walk.parseCommit(cachedHead), head);
+    }
+
+    /**
+     * Builds the rows of the old table followed by the added commits, in the order of the walk, on the heap:
+     * the new file is written without mapping it.
+     */
+    private static ByteBuffer write(CommitTable old, List<AddedCommit> added, ObjectId head) throws IOException {
+        int oldCount = old == null ? 0 : old.count;
+        int count = oldCount + added.size();
+        Map<ObjectId, Integer> addedRows = new HashMap<>();
+        for (int i = 0; i < added.size(); i++) {
+            addedRows.put(added.get(i).commit().copy(), oldCount + i);
+        }
+
+        List<String> authors = new ArrayList<>(old == null ? List.of() : Arrays.asList(old.authors));
+        List<String> keys = new ArrayList<>(old == null ? List.of() : Arrays.asList(old.keys));
+        Map<String, Integer> authorIds = indexOf(authors);
+        Map<String, Integer> keyIds = indexOf(keys);
+        int oldParentRefs = old == null ? 0 : old.buffer.getInt(12);
+        int oldKeyRefs = old == null ? 0 : old.buffer.getInt(16);
+        int[] addedAuthors = new int[added.size()];
+        List<Integer> addedParents = new ArrayList<>();
+        List<Integer> addedKeys = new ArrayList<>();
+        int[] parentsEnds = new int[added.size()];
+        int[] keysEnds = new int[added.size()];
+        for (int i = 0; i < added.size(); i++) {
+            RevCommit commit = added.get(i).commit();
+            addedAuthors[i] = authorIds.computeIfAbsent(added.get(i).author(), name -> {
+                authors.add(name);
+                return authors.size() - 1;
+            });
+            for (RevCommit parent : commit.getParents()) {
+                Integer row = addedRows.get(parent);
+                if (row == null && old != null && old.rowOf(parent) >= 0)
+                    row = old.rowOf(parent);
+                // parents missing from the repository (e.g. in a shallow clone) are left out
+                if (row != null)
+                    addedParents.add(row);
+            }
+            for (String key : added.get(i).ticketKeys()) {
+                addedKeys.add(keyIds.computeIfAbsent(key, k -> {
+                    keys.add(k);
+                    return keys.size() - 1;
+                }));
+            }
+            parentsEnds[i] = oldParentRefs + addedParents.size();
+            keysEnds[i] = oldKeyRefs + addedKeys.size();
+        }
+
+        int slots = MIN_SLOTS;
+        while (slots < 2 * count)
+            slots *= 2;
+        byte[] dictionaries = encodeStrings(authors, keys);
+        long size = HEADER_SIZE + (long) count * ROW_SIZE + slots * 4L
+                + 4L * (oldParentRefs + addedParents.size() + oldKeyRefs + addedKeys.size()) + dictionaries.length;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Commit table too big: " + size + " bytes");
+
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        int offset = HEADER_SIZE;
+        if (old != null)
+            out.put(offset, old.buffer, HEADER_SIZE, oldCount * ROW_SIZE);
+        byte[] raw = new byte[ID_SIZE];
+        for (int i = 0; i < added.size(); i++) {
+            RevCommit commit = added.get(i).commit();
+            int rowOffset = offset + (oldCount + i) * ROW_SIZE;
+            commit.copyRawTo(raw, 0);
+            out.put(rowOffset, raw);
+            out.putInt(rowOffset + ID_SIZE, commit.getCommitTime());
+            out.putInt(rowOffset + ID_SIZE + 4, addedAuthors[i]);
+            out.putInt(rowOffset + ID_SIZE + 8, parentsEnds[i]);
+            out.putInt(rowOffset + ID_SIZE + 12, keysEnds[i]);
+        }
+        offset += count * ROW_SIZE;
+
+        for (int row = 0; row < count; row++) {
+            out.get(HEADER_SIZE + row * ROW_SIZE, raw);
+            int slot = hash(ObjectId.fromRaw(raw)) & (slots - 1);
+            while (out.getInt(offset + slot * 4) != 0)
+                slot = (slot + 1) & (slots - 1);
+            out.putInt(offset + slot * 4, row + 1);
+        }
+        offset += slots * 4;
+
+        offset = copyInts(out, offset, old, old == null ? 0 : old.parentsOffset, oldParentRefs, addedParents);
+        offset = copyInts(out, offset, old, old == null ? 0 : old.keysOffset, oldKeyRefs, addedKeys);
+        out.put(offset, dictionaries);
+
+        out.putInt(0, MAGIC);
+        out.putInt(4, FORMAT_VERSION);
+        out.putInt(8, count);
+        out.putInt(12, oldParentRefs + addedParents.size());
+        out.putInt(16, oldKeyRefs + addedKeys.size());
+        out.putInt(20, authors.size());
+        out.putInt(24, keys.size());
+        out.putInt(28, slots);
+        head.copyRawTo(raw, 0);
+        out.put(32, raw);
+        return out;
+    }
+
+    private static int copyInts(ByteBuffer out, int offset, CommitTable old, int oldOffset, int oldLength, List<Integer> added) {
+        if (old != null)
+            out.put(offset, old.buffer, oldOffset, oldLength * 4);
+        offset += oldLength * 4;
+        for (int value : added) {
+            out.putInt(offset, value);
+            offset += 4;
+        }
+        return offset;
+    }
+
+    private static Map<String, Integer> indexOf(List<String> strings) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int i = 0; i < strings.size(); i++) {
+            ids.put(strings.get(i), i);
+        }
+        return ids;
+    }
+
+    private static byte[] encodeStrings(List<String> first, List<String> second) {
+        ByteBuffer encoded = ByteBuffer.allocate(1024);
+        for (List<String> strings : List.of(first, second)) {
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                if (encoded.remaining() < bytes.length + 4) {
+                    ByteBuffer bigger = ByteBuffer.allocate(2 * (encoded.capacity() + bytes.length + 4));
+                    encoded.flip();
+                    bigger.put(encoded);
+                    encoded = bigger;
+                }
+                encoded.putInt(bytes.length);
+                encoded.put(bytes);
+            }
+        }
+        return Arrays.copyOf(encoded.array(), encoded.position());
+    }
+
+    private static int readStrings(ByteBuffer buffer, int offset, String[] strings) {
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            buffer.get(offset + 4, bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            offset += 4 + bytes.length;
+        }
+        return offset;
+    }
+
+    private static boolean sameId(ByteBuffer buffer, int offset, byte[] raw) {
+        for (int i = 0; i < raw.length; i++) {
+            if (buffer.get(offset + i) != raw[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int hash(AnyObjectId id) {
+        // object ids are already uniformly distributed, a final mix is enough
+        int h = id.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
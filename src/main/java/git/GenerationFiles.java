@@ -0,0 +1,144 @@
+package git;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped files that are never replaced in place: the content of {@code <file>} is in the sibling
+ * {@code <file>.<generation>} with the highest generation, and a new content is published as the next generation.
+ * On Windows a file cannot be replaced nor deleted while it is mapped (by this or another process), so a writer
+ * never touches the mapped generations: the older ones are deleted when possible, otherwise at a later publication.
+ */
+final class GenerationFiles {
+
+    private static final int MAX_READ_ATTEMPTS = 5;
+
+    private GenerationFiles() {
+    }
+
+    /**
+     * Reader of the content of a generation.
+     *
+     * @param <T> type of the content
+     */
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(Path path) throws IOException;
+    }
+
+    /**
+     * @param content    the content read from the generation, or null if there is no generation
+     * @param generation the number of the generation, 0 if there is none
+     */
+    record Loaded<T>(T content, long generation) {
+    }
+
+    /**
+     * @return the number of the latest generation of the file, 0 if there is none
+     */
+    static long latest(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        long latest = 0;
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(directory)) {
+            for (Path sibling : siblings) {
+                latest = Math.max(latest, generationOf(sibling, prefix));
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        return latest;
+    }
+
+    /**
+     * Reads the latest generation of the file, looking for it again if it is deleted meanwhile by a newer publication.
+     */
+    static <T> Loaded<T> readLatest(Path file, Reader<T> reader) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            long generation = latest(file);
+            if (generation == 0)
+                return new Loaded<>(null, 0);
+            try {
+                return new Loaded<>(reader.read(pathOf(file, generation)), generation);
+            } catch (NoSuchFileException e) {
+                if (attempt == MAX_READ_ATTEMPTS)
+                    throw e;
+            }
+        }
+    }
+
+    static Path pathOf(Path file, long generation) {
+        return file.resolveSibling(file.getFileName() + "." + generation);
+    }
+
+    /**
+     * Writes the content as a new generation after the given one, and deletes the older generations that are not in use.
+     *
+     * @param file     the file
+     * @param content  the whole content of the new generation
+     * @param previous the generation the content has been built from, 0 if none
+     * @return the number of the new generation
+     */
+    static long publish(Path file, ByteBuffer content, long previous) throws IOException {
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining())
+                    channel.write(content);
+                channel.force(false);
+            }
+            // the target never exists, unless a concurrent writer published the same generation first
+            for (long generation = Math.max(previous, latest(file)) + 1; ; generation++) {
+                try {
+                    Files.move(tmp, pathOf(file, generation));
+                    deleteOlder(file, generation);
+                    return generation;
+                } catch (FileAlreadyExistsException e) {
+                    // try the next generation
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void deleteOlder(Path file, long generation) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".";
+        try (DirectoryStream<Path> siblings = Files.newDirectoryStream(directory)) {
+            for (Path sibling : siblings) {
+                long other = generationOf(sibling, prefix);
+                if (other > 0 && other < generation)
+                    tryDelete(sibling);
+            }
+        }
+        // the single file written by the previous versions
+        tryDelete(file);
+    }
+
+    private static void tryDelete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // still mapped by someone: it is deleted at a later publication
+        }
+    }
+
+    private static long generationOf(Path sibling, String prefix) {
+        String name = sibling.getFileName().toString();
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 18)
+            return 0;
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i)))
+                return 0;
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+}
@@ -1,64 +1,109 @@
 package git;
 
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.ToIntFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class GitAnalyzer {
 
-    public Iterable<RevCommit> getGitLog(Git git, Date maxDate) throws GitAPIException {
-        return git.log().setRevFilter(CommitTimeRevFilter.before(maxDate)).call();
+    /**
+     * @param table the commit table of the repository
+     * @return the function reading the commit time of the commits of the table
+     */
+    public static ToIntFunction<AnyObjectId> commitTimeIn(CommitTable table) {
+        return commit -> table.getCommitTime(table.rowOf(commit));
     }
 
-    public List<RevCommit> getDatetimeSortedGitLog(Git git, Date maxDate) throws GitAPIException {
-        Iterable<RevCommit> gitLog = getGitLog(git, maxDate);
-        ArrayList<RevCommit> allLog = new ArrayList<>();
-        for (RevCommit c : gitLog)
-            allLog.add(c);
-
-        allLog.sort((o1, o2) -> {
-            if (o1.getCommitTime() > o2.getCommitTime())
-                return 1;
-            else if (o1.getCommitTime() == o2.getCommitTime())
-                return 0;
-            return -1;
-        });
-        return allLog;
+    /**
+     * @param git the repository
+     * @return the whole log reachable from HEAD, in topological order: each commit comes after all its parents;
+     * the bodies of the commits are not retained
+     */
+    public List<RevCommit> getTopologicalGitLog(Git git) throws IOException {
+        List<RevCommit> log = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
+            walk.setRetainBody(false);
+            walk.sort(RevSort.TOPO);
+            walk.sort(RevSort.REVERSE, true);
+            walk.markStart(walk.parseCommit(git.getRepository().resolve(Constants.HEAD)));
+            for (RevCommit commit : walk)
+                log.add(commit);
+        }
+        return log;
     }
 
-    public List<RevCommit> getCommitsContainingString(Iterable<RevCommit> commits, String target) {
-        ArrayList<RevCommit> results = new ArrayList<>();
-        for (RevCommit commit : commits) {
-            // comparison is done without lower case
-            if (isExactlyContained(commit.getFullMessage(), target))
-                results.add(commit);
+    /**
+     * Indexes each commit of the log by every Jira ticket key (e.g. BOOKKEEPER-123) of the given projects,
+     * reading the ticket keys of each commit from the commit table instead of searching its message,
+     * so the commits do not have to be parsed. The stored keys are matched with
+     * {@link #compileTicketKeyPattern(Collection)}, so the keys are the ones found in the messages.
+     * The commits of each key keep the order in which they appear in the log.
+     *
+     * @param commits     the log of commits, all in the table
+     * @param table       the commit table of the repository
+     * @param projectKeys Jira project keys whose tickets have to be searched (e.g. BOOKKEEPER)
+     * @return a multimap from ticket key to the commits that refer to it
+     */
+    public <C extends AnyObjectId> Map<String, List<C>> getCommitsByTicketKey(Iterable<C> commits, CommitTable table,
+                                                                              Collection<String> projectKeys) {
+        Pattern pattern = compileTicketKeyPattern(projectKeys);
+        Map<String, List<C>> results = new HashMap<>();
+        for (C commit : commits) {
+            Set<String> keys = new LinkedHashSet<>();
+            for (String storedKey : table.getTicketKeys(table.rowOf(commit))) {
+                keys.addAll(extractTicketKeys(storedKey, pattern));
+            }
+            for (String key : keys) {
+                results.computeIfAbsent(key, k -> new ArrayList<>()).add(commit);
+            }
         }
-
         return results;
     }
 
     /**
-     * This method is used to avoid incorrect results obtained with the
-     * contains() method of strings.
-     * E.g. if "TICKET-123" is present in the source, and we search for the
-     * string "TICKET-1", the result is true with contains(), but is false
-     * using the following method.
+     * Builds the pattern matching the ticket keys of the given Jira projects.
+     * Keys are matched on word boundaries, so "TICKET-12" is not found inside "TICKET-123".
      *
-     * @param source The source text
-     * @param target The string to exactly find
-     * @return true if the target string is found, false otherwise
+     * @param projectKeys Jira project keys (e.g. BOOKKEEPER, ZOOKEEPER)
+     * @return the compiled pattern
+     */
+    public static Pattern compileTicketKeyPattern(Collection<String> projectKeys) {
+        StringJoiner alternatives = new StringJoiner("|", "\\b(?:", ")-\\d+\\b");
+        for (String projectKey : new TreeSet<>(projectKeys)) {
+            alternatives.add(Pattern.quote(projectKey));
+        }
+        return Pattern.compile(alternatives.toString());
+    }
+
+    /**
+     * @param message commit message
+     * @param pattern pattern built by {@link #compileTicketKeyPattern(Collection)}
+     * @return the distinct ticket keys found in the message, in order of appearance
+     */
+    public static Set<String> extractTicketKeys(String message, Pattern pattern) {
+        Set<String> keys = new LinkedHashSet<>();
+        Matcher m = pattern.matcher(message);
+        while (m.find()) {
+            keys.add(m.group());
+        }
+        return keys;
+    }
+
+    /**
+     * @param ticketKey Jira ticket key (e.g. BOOKKEEPER-123)
+     * @return the project part of the key (e.g. BOOKKEEPER)
      */
-    private boolean isExactlyContained(String source, String target){
-        String pattern = "\\b" + target + "\\b";
-        Pattern p = Pattern.compile(pattern);
-        Matcher m = p.matcher(source);
-        return m.find();
+    public static String getProjectKey(String ticketKey) {
+        int separator = ticketKey.lastIndexOf('-');
+        return separator < 0 ? ticketKey : ticketKey.substring(0, separator);
     }
 }
@@ -3,13 +3,14 @@ package git;
 import model.GitCommit;
 import org.eclipse.jgit.revwalk.RevCommit;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 
 public class GitCommitFactory {
     private static GitCommitFactory instance;
 
-    public static GitCommitFactory getInstance() {
+    public static synchronized GitCommitFactory getInstance() {
         if (instance == null) {
             instance = new GitCommitFactory();
         }
@@ -20,14 +21,15 @@ public class GitCommitFactory {
     }
 
     public GitCommit parseCommit(RevCommit commit, String jiraTicketKey) {
-        String id = commit.getId().toString().split(" ")[1];
-        String shortId = commit.getId().toString().split(" ")[2];
+        String id = commit.name();
+        String shortId = commit.abbreviate(7).name();
                         /* Substitute with the method 'getFullMessage()'
                         if you want to read the whole commit message plus other infos */
         String msg = commit.getShortMessage();
 
         String author = commit.getCommitterIdent().getName();
-        String date = new SimpleDateFormat("yyyy-MM-dd").format(new Date(commit.getCommitTime() * 1000L));
+        // ISO local date, i.e. yyyy-MM-dd
+        String date = LocalDate.ofInstant(Instant.ofEpochSecond(commit.getCommitTime()), ZoneId.systemDefault()).toString();
         return new GitCommit(commit, id, shortId, date, author, msg, jiraTicketKey);
     }
 }
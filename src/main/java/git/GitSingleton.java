@@ -48,12 +48,23 @@ public class GitSingleton {
         return result;
     }
 
+    /**
+     * Opens a repository other than the configured one (e.g. in batch mode).
+     * The caller is responsible for closing it.
+     *
+     * @param repoPath path of the working tree of the repository
+     * @return the opened repository
+     */
+    public static Git open(String repoPath) throws IOException {
+        FileRepositoryBuilder repoBuilder = new FileRepositoryBuilder();
+        Repository repo = repoBuilder.setGitDir(new File(repoPath + "\\.git")).setMustExist(true).build();
+        return new Git(repo);
+    }
+
     public synchronized Git getGit(){
         if (this.git == null){
             try {
-                FileRepositoryBuilder repoBuilder = new FileRepositoryBuilder();
-                Repository repo = repoBuilder.setGitDir(new File(this.repoPath + "\\.git")).setMustExist(true).build();
-                this.git = new Git(repo);
+                this.git = open(this.repoPath);
             } catch (IOException e) {
                 LoggerSingleton.getInstance().getLogger().log(Level.SEVERE, "Exception JGit in building repository", e);
             } catch (NullPointerException e){
@@ -0,0 +1,245 @@
+package git;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent cache of the lines added and deleted between two versions of a file, keyed by the pair of blob ids.
+ * Since blobs are content-addressed, an entry never becomes stale and can be shared by all the projects.
+ * <p>
+ * The file is an open-addressing hash table that is memory-mapped read-only, so lookups do not copy it on the heap
+ * and any number of threads (or processes) can read it at the same time. New entries are kept in memory until
+ * {@link #flush()}, that writes a new table with all the entries and publishes it as a new generation of the file
+ * (see {@link GenerationFiles}), so a table mapped by a reader is never replaced. Flushes are serialized by a lock on
+ * a sibling {@code .lock} file and merge the entries with the latest generation, so processes sharing the cache do not
+ * lose each other's entries.
+ * <p>
+ * Layout: a header (magic, format version, number of slots, number of entries) followed by slots of 48 bytes:
+ * old blob id (20 bytes), new blob id (20 bytes), lines added and lines deleted. The highest bit of the
+ * lines added marks the used slots.
+ */
+public class LocStatsCache {
+
+    private static final int MAGIC = 0x4C4F4353;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 48;
+    private static final int ID_SIZE = 20;
+    private static final int USED = 0x80000000;
+    private static final int MIN_SLOTS = 1024;
+    // file locks are held by the whole JVM, so flushes of caches in the same JVM are serialized here
+    private static final Object FLUSH_LOCK = new Object();
+
+    /**
+     * Lines added and deleted between two blobs.
+     */
+    public record LocStats(int linesAdded, int linesDeleted) {
+    }
+
+    private record Key(ObjectId oldId, ObjectId newId) {
+    }
+
+    // the mapped file and its number of slots, swapped together at each flush
+    private record Table(ByteBuffer buffer, int slots) {
+    }
+
+    private final Path file;
+    private volatile Table table;
+    // the generation of the mapped table, read and written only under the lock of this
+    private long generation;
+    private final Map<Key, LocStats> pending = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param file the file of the cache; if it does not exist (or it is not a valid cache) it is created at the first flush
+     */
+    public LocStatsCache(Path file) throws IOException {
+        this.file = file;
+        GenerationFiles.Loaded<Table> latest = GenerationFiles.readLatest(file, LocStatsCache::readTable);
+        this.table = latest.content();
+        this.generation = latest.generation();
+    }
+
+    /**
+     * @return the cached statistics of the pair of blobs, or null if they are not cached
+     */
+    public LocStats lookup(AnyObjectId oldId, AnyObjectId newId) {
+        Table current = this.table;
+        if (current != null) {
+            ByteBuffer buffer = current.buffer();
+            int slotCount = current.slots();
+            byte[] ids = new byte[2 * ID_SIZE];
+            oldId.copyRawTo(ids, 0);
+            newId.copyRawTo(ids, ID_SIZE);
+            for (int slot = hash(oldId, newId) & (slotCount - 1); ; slot = (slot + 1) & (slotCount - 1)) {
+                int offset = HEADER_SIZE + slot * SLOT_SIZE;
+                int added = buffer.getInt(offset + 2 * ID_SIZE);
+                if ((added & USED) == 0)
+                    break;
+                if (sameIds(buffer, offset, ids)) {
+                    hits.increment();
+                    return new LocStats(added & ~USED, buffer.getInt(offset + 2 * ID_SIZE + 4));
+                }
+            }
+        }
+        LocStats stats = pending.get(new Key(oldId.toObjectId(), newId.toObjectId()));
+        if (stats != null)
+            hits.increment();
+        else
+            misses.increment();
+        return stats;
+    }
+
+    public void put(AnyObjectId oldId, AnyObjectId newId, int linesAdded, int linesDeleted) {
+        pending.put(new Key(oldId.toObjectId(), newId.toObjectId()), new LocStats(linesAdded, linesDeleted));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Writes the entries added since the previous flush, publishing a new table
+     * that also contains the entries flushed in the meantime by other processes.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty())
+            return;
+        Map<Key, LocStats> added = Map.copyOf(pending);
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        synchronized (FLUSH_LOCK) {
+            // the lock is released when the channel is closed
+            try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                lockChannel.lock();
+                Table base = this.table;
+                long baseGeneration = this.generation;
+                // another process may have published a newer generation since this one was mapped
+                if (GenerationFiles.latest(file) != baseGeneration) {
+                    GenerationFiles.Loaded<Table> latest = GenerationFiles.readLatest(file, LocStatsCache::readTable);
+                    if (latest.content() != null)
+                        base = latest.content();
+                    baseGeneration = latest.generation();
+                }
+                long published = GenerationFiles.publish(file, write(base, added), baseGeneration);
+                Table mapped = readTable(GenerationFiles.pathOf(file, published));
+                if (mapped == null)
+                    throw new IOException("Invalid cache written to " + GenerationFiles.pathOf(file, published));
+                this.table = mapped;
+                this.generation = published;
+            }
+        }
+        // the flushed entries are now found in the mapped table
+        for (Key key : added.keySet()) {
+            pending.remove(key, added.get(key));
+        }
+    }
+
+    /**
+     * @return the content of a new table with the entries of the current one and the added ones
+     */
+    private static ByteBuffer write(Table current, Map<Key, LocStats> added) throws IOException {
+        ByteBuffer old = current == null ? null : current.buffer();
+        int oldSlots = current == null ? 0 : current.slots();
+        int oldCount = old == null ? 0 : old.getInt(12);
+
+        int newSlots = MIN_SLOTS;
+        while (newSlots < 2 * (oldCount + added.size()))
+            newSlots *= 2;
+        long size = HEADER_SIZE + (long) newSlots * SLOT_SIZE;
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Cache too large: " + (oldCount + added.size()) + " entries");
+
+        // built on the heap: a mapped file is never moved nor replaced
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        int count = 0;
+        byte[] ids = new byte[2 * ID_SIZE];
+        for (int slot = 0; old != null && slot < oldSlots; slot++) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            int linesAdded = old.getInt(offset + 2 * ID_SIZE);
+            if ((linesAdded & USED) != 0) {
+                old.get(offset, ids);
+                insert(out, newSlots, ids, linesAdded & ~USED, old.getInt(offset + 2 * ID_SIZE + 4));
+                count++;
+            }
+        }
+        for (Map.Entry<Key, LocStats> entry : added.entrySet()) {
+            entry.getKey().oldId().copyRawTo(ids, 0);
+            entry.getKey().newId().copyRawTo(ids, ID_SIZE);
+            if (insert(out, newSlots, ids, entry.getValue().linesAdded(), entry.getValue().linesDeleted()))
+                count++;
+        }
+        out.putInt(0, MAGIC);
+        out.putInt(4, FORMAT_VERSION);
+        out.putInt(8, newSlots);
+        out.putInt(12, count);
+        return out;
+    }
+
+    /**
+     * @return the table in the generation file, or null if it is not a valid cache
+     */
+    private static Table readTable(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int slotCount = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION || Integer.bitCount(slotCount) != 1
+                    || channel.size() != HEADER_SIZE + (long) slotCount * SLOT_SIZE)
+                // not a valid cache: it will be overwritten at the first flush
+                return null;
+            return new Table(buffer, slotCount);
+        }
+    }
+
+    /**
+     * @return false if the pair of blobs was already in the table
+     */
+    private static boolean insert(ByteBuffer out, int slots, byte[] ids, int linesAdded, int linesDeleted) {
+        ObjectId oldId = ObjectId.fromRaw(ids, 0);
+        ObjectId newId = ObjectId.fromRaw(ids, ID_SIZE);
+        for (int slot = hash(oldId, newId) & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            int offset = HEADER_SIZE + slot * SLOT_SIZE;
+            if ((out.getInt(offset + 2 * ID_SIZE) & USED) == 0) {
+                out.put(offset, ids);
+                out.putInt(offset + 2 * ID_SIZE, linesAdded | USED);
+                out.putInt(offset + 2 * ID_SIZE + 4, linesDeleted);
+                return true;
+            }
+            if (sameIds(out, offset, ids))
+                return false;
+        }
+    }
+
+    private static boolean sameIds(ByteBuffer buffer, int offset, byte[] ids) {
+        for (int i = 0; i < ids.length; i++) {
+            if (buffer.get(offset + i) != ids[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int hash(AnyObjectId oldId, AnyObjectId newId) {
+        // object ids are already uniformly distributed, so mixing the two is enough
+        int h = oldId.hashCode() * 31 + newId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+}
@@ -0,0 +1,104 @@
+package git;
+
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tree filter made of include and exclude glob rules on the paths of the repository.
+ * A file is kept if it matches at least one include rule and no exclude rule; a directory matching an
+ * exclude rule is not walked at all, so nothing below it is ever read or compared.
+ * <p>
+ * Globs are matched against the whole path: {@code *} and {@code ?} do not cross directories,
+ * {@code **}{@code /} matches any number of directories (also none) and {@code **} matches anything.
+ */
+public class PathGlobFilter extends TreeFilter {
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final String description;
+
+    private PathGlobFilter(List<Pattern> includes, List<Pattern> excludes, String description) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.description = description;
+    }
+
+    /**
+     * @param includeGlobs rules of the files to keep; if empty, all the files are kept
+     * @param excludeGlobs rules of the files and directories to skip
+     * @return the compiled filter
+     */
+    public static PathGlobFilter create(List<String> includeGlobs, List<String> excludeGlobs) {
+        return new PathGlobFilter(compile(includeGlobs), compile(excludeGlobs),
+                "PathGlobFilter(include=" + includeGlobs + ", exclude=" + excludeGlobs + ")");
+    }
+
+    @Override
+    public boolean include(TreeWalk walker) {
+        String path = walker.getPathString();
+        if (matchesAny(excludes, path))
+            return false;
+        // a directory may contain files to include, whatever its name is
+        return walker.isSubtree() || includes.isEmpty() || matchesAny(includes, path);
+    }
+
+    @Override
+    public boolean shouldBeRecursive() {
+        return true;
+    }
+
+    @Override
+    public TreeFilter clone() {
+        // immutable, so it can be shared
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches())
+                return true;
+        }
+        return false;
+    }
+
+    private static List<Pattern> compile(List<String> globs) {
+        List<Pattern> patterns = new ArrayList<>(globs.size());
+        for (String glob : globs) {
+            patterns.add(Pattern.compile(toRegex(glob)));
+        }
+        return patterns;
+    }
+
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+            } else {
+                if (c == '*')
+                    regex.append("[^/]*");
+                else if (c == '?')
+                    regex.append("[^/]");
+                else
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                i++;
+            }
+        }
+        return regex.toString();
+    }
+}
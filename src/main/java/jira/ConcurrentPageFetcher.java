@@ -0,0 +1,189 @@
+package jira;
+
+import json.JSONReader;
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Downloads pages from a REST API with a bounded number of asynchronous requests in flight.
+ * The requests are sent without waiting for the previous responses, which are parsed by a pool of threads
+ * as soon as they arrive. Requests to the same host are spaced by a minimum interval, and failed requests
+ * are retried with an exponential backoff.
+ */
+public class ConcurrentPageFetcher implements AutoCloseable {
+
+    private final ExecutorService pool;
+    private final Semaphore inFlight;
+    private final long minIntervalMillis;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final Map<String, HostRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param concurrentRequests   maximum number of requests in flight at the same time
+     * @param minIntervalMillis    minimum interval between the start of two requests to the same host
+     * @param maxRetries           number of retries of a failed request before giving up
+     * @param initialBackoffMillis waiting time before the first retry; it doubles at each retry
+     */
+    public ConcurrentPageFetcher(int concurrentRequests, long minIntervalMillis, int maxRetries, long initialBackoffMillis) {
+        if (concurrentRequests < 1)
+            throw new IllegalArgumentException("At least one concurrent request is needed");
+        this.inFlight = new Semaphore(concurrentRequests);
+        // the requests in flight are bounded by the semaphore, so is the number of parsing threads
+        this.pool = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "jira-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Fetches a single page, applying rate limiting and retries.
+     * Pages served by the response cache are not rate limited.
+     *
+     * @param url    the url of the page
+     * @param parser the parser of the page
+     * @return the parsed page
+     * @throws IOException if the page cannot be downloaded after all the retries
+     */
+    public <T> T fetch(String url, JSONReader.ResponseParser<T> parser) throws IOException {
+        return await(List.of(fetchAsync(url, parser, 0, initialBackoffMillis))).get(0);
+    }
+
+    /**
+     * Fetches all the pages concurrently.
+     *
+     * @param urls   the urls of the pages
+     * @param parser the parser of the pages
+     * @return the parsed pages, in the same order of the urls
+     * @throws IOException if any of the pages cannot be downloaded
+     */
+    public <T> List<T> fetchAll(List<String> urls, JSONReader.ResponseParser<T> parser) throws IOException {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (String url : urls) {
+            futures.add(fetchAsync(url, parser, 0, initialBackoffMillis));
+        }
+        return await(futures);
+    }
+
+    /**
+     * Sends the request of the page once a slot is free, retrying it after a backoff if it fails.
+     */
+    private <T> CompletableFuture<T> fetchAsync(String url, JSONReader.ResponseParser<T> parser, int attempt, long backoff) {
+        try {
+            acquire();
+        } catch (InterruptedIOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> page;
+        try {
+            HostRateLimiter limiter = limiters.computeIfAbsent(hostOf(url), h -> new HostRateLimiter(minIntervalMillis));
+            page = JSONReader.readFromUrlAsync(url, parser, limiter::acquire, pool);
+            page.whenComplete((result, error) -> inFlight.release());
+        } catch (IOException | RuntimeException e) {
+            inFlight.release();
+            page = CompletableFuture.failedFuture(e);
+        }
+        return page.exceptionallyCompose(error -> {
+            if (attempt >= maxRetries || !(unwrap(error) instanceof IOException) || unwrap(error) instanceof InterruptedIOException)
+                return CompletableFuture.failedFuture(error);
+            long delay = backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, pool);
+            return CompletableFuture.supplyAsync(() -> fetchAsync(url, parser, attempt + 1, backoff * 2), delayed)
+                    .thenCompose(retry -> retry);
+        });
+    }
+
+    private void acquire() throws InterruptedIOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request");
+        }
+    }
+
+    /**
+     * @return the parsed pages, in the same order of the futures
+     */
+    private static <T> List<T> await(List<CompletableFuture<T>> futures) throws IOException {
+        List<T> pages = new ArrayList<>();
+        try {
+            for (CompletableFuture<T> future : futures) {
+                pages.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(f -> f.cancel(true));
+            Throwable cause = unwrap(e);
+            if (cause instanceof IOException ioException)
+                throw ioException;
+            if (cause instanceof JSONException jsonException)
+                throw jsonException;
+            throw new IOException("Error fetching pages", cause);
+        } catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching pages", e);
+        }
+        return pages;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null)
+            error = error.getCause();
+        return error;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private static String hostOf(String url) {
+        String host = URI.create(url).getHost();
+        return host == null ? "" : host;
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a request");
+        }
+    }
+
+    /**
+     * Hands out time slots spaced by a fixed interval to the threads requesting the same host.
+     */
+    private static class HostRateLimiter {
+        private final long intervalNanos;
+        private long nextSlot;
+
+        HostRateLimiter(long intervalMillis) {
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            this.nextSlot = System.nanoTime();
+        }
+
+        void acquire() throws IOException {
+            long slot;
+            synchronized (this) {
+                slot = Math.max(System.nanoTime(), nextSlot);
+                nextSlot = slot + intervalNanos;
+            }
+            long wait = slot - System.nanoTime();
+            if (wait > 0)
+                sleep(TimeUnit.NANOSECONDS.toMillis(wait));
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package jira;
 
 import json.JSONReader;
+import json.JsonPullParser;
 import model.JiraTicket;
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import java.io.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 
 public class RetrieveTicketsID {
 
+    private static final String JIRA_URL = "https://issues.apache.org/jira";
+    private static final int MAX_RESULTS = 1000;
+    private static final int CONCURRENT_REQUESTS = 4;
+    private static final long MIN_REQUEST_INTERVAL_MILLIS = 100;
+    private static final int MAX_RETRIES = 3;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+
     private RetrieveTicketsID() {}
 
 
@@ -23,48 +32,218 @@ public class RetrieveTicketsID {
      * @throws JSONException Error occurred while parsing the JSON response from Jira
      */
     public static List<JiraTicket> getTicketsID(String projectName) throws IOException, JSONException {
-        int j;
-        int i = 0;
-        int total;
+        return getTicketsID(JIRA_URL, projectName, CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * The first page of results is requested alone to learn the total number of tickets;
+     * then all the remaining pages are requested concurrently.
+     *
+     * @param jiraUrl            base url of the Jira instance (e.g. a local stub for testing)
+     * @param projectName        the name of the project
+     * @param concurrentRequests maximum number of pages downloaded at the same time
+     * @return A list of tickets, in the same order returned by Jira
+     * @throws IOException Error in IO communication
+     * @throws JSONException Error occurred while parsing the JSON response from Jira
+     */
+    public static List<JiraTicket> getTicketsID(String jiraUrl, String projectName, int concurrentRequests) throws IOException, JSONException {
+        return fetchTickets(jiraUrl, projectName, "", concurrentRequests);
+    }
+
+    /**
+     * Synchronizes the local store of tickets with Jira: only the tickets updated since the last
+     * synchronization are requested and merged into the store, which is then saved with a new watermark.
+     * The first synchronization downloads all the tickets.
+     *
+     * @param projectName the name of the project
+     * @param storeFile   file of the local store of tickets
+     * @return all the tickets of the store, after the synchronization
+     * @throws IOException Error in IO communication
+     * @throws JSONException Error occurred while parsing the JSON response from Jira
+     * @see #syncTicketsID(String, String, Path, int)
+     */
+    public static List<JiraTicket> syncTicketsID(String projectName, Path storeFile) throws IOException, JSONException {
+        return syncTicketsID(JIRA_URL, projectName, storeFile, CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Tickets updated since the last synchronization that stopped satisfying the assumptions of
+     * {@link #getTicketsID(String)} (e.g. reopened bugs) are removed from the store.
+     * In offline mode (see {@link JSONReader#isOffline()}) a non-empty store is returned as it is,
+     * since the requests of a new synchronization cannot be in the cache.
+     *
+     * @param jiraUrl            base url of the Jira instance (e.g. a local stub for testing)
+     * @param projectName        the name of the project
+     * @param storeFile          file of the local store of tickets
+     * @param concurrentRequests maximum number of pages downloaded at the same time
+     * @return all the tickets of the store, after the synchronization, sorted by key
+     * @throws IOException Error in IO communication
+     * @throws JSONException Error occurred while parsing the JSON response from Jira
+     */
+    public static List<JiraTicket> syncTicketsID(String jiraUrl, String projectName, Path storeFile, int concurrentRequests)
+            throws IOException, JSONException {
+        TicketStore store = TicketStore.load(storeFile);
+        if (store.getWatermark() != null && JSONReader.isOffline())
+            return store.getTickets();
+
+        // Jira compares dates in the timezone of the server, so the watermark is moved back by a day:
+        // tickets updated in the overlap are downloaded again and simply replace the stored ones
+        String newWatermark = LocalDate.now(ZoneOffset.UTC).minusDays(1).toString();
+        if (store.getWatermark() == null) {
+            store.merge(fetchTickets(jiraUrl, projectName, "", concurrentRequests));
+        } else {
+            String updatedSince = "%22updated%22%3E=%22" + store.getWatermark() + "%22";
+            store.merge(fetchTickets(jiraUrl, projectName, "AND" + updatedSince, concurrentRequests));
+            store.remove(fetchPages(jiraUrl, "project=%22" + projectName + "%22AND" + updatedSince
+                    + "AND(%22resolution%22%20IS%20EMPTY%20OR%20NOT(" + fixedBugsFilter() + "))", "key",
+                    RetrieveTicketsID::parseKey, concurrentRequests));
+        }
+        store.save(storeFile, newWatermark);
+        return store.getTickets();
+    }
+
+    private static List<JiraTicket> fetchTickets(String jiraUrl, String projectName, String jqlFilter, int concurrentRequests) throws IOException, JSONException {
         //Get JSON API for closed bugs w/ AV in the project
-        ArrayList<JiraTicket> results = new ArrayList<>();
-        do {
-            //Only gets a max of 1000 at a time, so must do this multiple times if bugs >1000
-            j = i + 1000;
-            String url = "https://issues.apache.org/jira/rest/api/2/search?jql=project=%22"
-                    + projectName + "%22AND%22issueType%22=%22Bug%22AND(%22status%22=%22closed%22OR"
-                    + "%22status%22=%22resolved%22)AND%22resolution%22=%22fixed%22&fields=key,resolutiondate,versions,created&startAt="
-                    + i + "&maxResults=" + j;
-            JSONObject json = JSONReader.readJsonFromUrl(url);
-            JSONArray issues = json.getJSONArray("issues");
-            total = json.getInt("total");
-            for (; i < total && i < j; i++) {
-                //Iterate through each bug
-                JiraTicket ticket = parseJsonTicket(issues.getJSONObject(i % 1000));
-                results.add(ticket);
+        return fetchPages(jiraUrl, "project=%22" + projectName + "%22AND" + fixedBugsFilter() + jqlFilter,
+                "key,resolutiondate,versions,created", RetrieveTicketsID::parseTicket, concurrentRequests);
+    }
+
+    private static String fixedBugsFilter() {
+        return "%22issueType%22=%22Bug%22AND(%22status%22=%22closed%22OR"
+                + "%22status%22=%22resolved%22)AND%22resolution%22=%22fixed%22";
+    }
+
+    private static <T> List<T> fetchPages(String jiraUrl, String jql, String fields, IssueParser<T> issueParser,
+                                          int concurrentRequests) throws IOException, JSONException {
+        ArrayList<T> results = new ArrayList<>();
+        JSONReader.ResponseParser<Page<T>> pageParser = reader -> parsePage(reader, issueParser);
+        try (ConcurrentPageFetcher fetcher = new ConcurrentPageFetcher(concurrentRequests, MIN_REQUEST_INTERVAL_MILLIS, MAX_RETRIES, INITIAL_BACKOFF_MILLIS)) {
+            Page<T> firstPage = fetcher.fetch(buildSearchUrl(jiraUrl, jql, fields, 0), pageParser);
+            int total = firstPage.total();
+            // Jira may return less results than the requested maximum, so the real size of the page is used
+            int pageSize = firstPage.issues().size();
+            results.addAll(firstPage.issues());
+
+            List<String> urls = new ArrayList<>();
+            for (int i = pageSize; pageSize > 0 && i < total; i += pageSize) {
+                urls.add(buildSearchUrl(jiraUrl, jql, fields, i));
             }
-        } while (i < total);
+            for (Page<T> page : fetcher.fetchAll(urls, pageParser)) {
+                results.addAll(page.issues());
+            }
+        }
 
         return results;
     }
 
-    private static JiraTicket parseJsonTicket(JSONObject ticket){
-        String key = ticket.get("key").toString();
-        JSONObject fields = ticket.getJSONObject("fields");
+    private static String buildSearchUrl(String jiraUrl, String jql, String fields, int startAt) {
+        return jiraUrl + "/rest/api/2/search?jql=" + jql + "&fields=" + fields + "&startAt="
+                + startAt + "&maxResults=" + MAX_RESULTS;
+    }
+
+    /**
+     * Decodes a page of search results straight from the response stream,
+     * skipping all the fields that are not needed to build the tickets.
+     */
+    static <T> Page<T> parsePage(Reader reader, IssueParser<T> issueParser) throws IOException {
+        JsonPullParser parser = new JsonPullParser(reader);
+        int total = 0;
+        List<T> issues = new ArrayList<>();
+        parser.beginObject();
+        while (parser.hasNext()) {
+            switch (parser.nextName()) {
+                case "total" -> total = parser.nextInt();
+                case "issues" -> {
+                    parser.beginArray();
+                    while (parser.hasNext()) {
+                        //Iterate through each bug
+                        issues.add(issueParser.parse(parser));
+                    }
+                    parser.endArray();
+                }
+                default -> parser.skipValue();
+            }
+        }
+        parser.endObject();
+        return new Page<>(total, issues);
+    }
+
+    private static String parseKey(JsonPullParser parser) throws IOException {
+        String key = null;
+        parser.beginObject();
+        while (parser.hasNext()) {
+            if (parser.nextName().equals("key"))
+                key = parser.nextString();
+            else
+                parser.skipValue();
+        }
+        parser.endObject();
+        if (key == null)
+            throw new JSONException("Issue without key in Jira response");
+        return key;
+    }
 
-        // parsing the affected versions
-        JSONArray versions = fields.getJSONArray("versions");
+    static JiraTicket parseTicket(JsonPullParser parser) throws IOException {
+        String key = null;
+        String creation = null;
+        String fix = null;
         ArrayList<String> parsedVersions = new ArrayList<>();
-        for (int i = 0; i < versions.length(); i++){
-            JSONObject version = versions.getJSONObject(i);
-            boolean released = version.getBoolean("released");
-            if (released) {
-                parsedVersions.add(version.getString("name"));
+
+        parser.beginObject();
+        while (parser.hasNext()) {
+            String name = parser.nextName();
+            if (name.equals("key")) {
+                key = parser.nextString();
+            } else if (name.equals("fields")) {
+                parser.beginObject();
+                while (parser.hasNext()) {
+                    switch (parser.nextName()) {
+                        // parsing creation and fixing dates
+                        case "created" -> creation = parser.nextString().substring(0, 10);
+                        case "resolutiondate" -> fix = parser.nextString().substring(0, 10);
+                        // parsing the affected versions
+                        case "versions" -> parseReleasedVersions(parser, parsedVersions);
+                        default -> parser.skipValue();
+                    }
+                }
+                parser.endObject();
+            } else {
+                parser.skipValue();
             }
         }
-        // parsing creation and fixing dates
-        String creation = fields.getString("created").substring(0,10);
-        String fix = fields.getString("resolutiondate").substring(0,10);
+        parser.endObject();
+
+        if (key == null || creation == null || fix == null)
+            throw new JSONException("Incomplete ticket in Jira response: " + key);
         return new JiraTicket(key, creation, fix, parsedVersions);
     }
+
+    private static void parseReleasedVersions(JsonPullParser parser, List<String> parsedVersions) throws IOException {
+        parser.beginArray();
+        while (parser.hasNext()) {
+            String versionName = null;
+            boolean released = false;
+            parser.beginObject();
+            while (parser.hasNext()) {
+                switch (parser.nextName()) {
+                    case "name" -> versionName = parser.nextString();
+                    case "released" -> released = parser.nextBoolean();
+                    default -> parser.skipValue();
+                }
+            }
+            parser.endObject();
+            if (released) {
+                parsedVersions.add(versionName);
+            }
+        }
+        parser.endArray();
+    }
+
+    @FunctionalInterface
+    interface IssueParser<T> {
+        T parse(JsonPullParser parser) throws IOException;
+    }
+
+    record Page<T>(int total, List<T> issues) {
+    }
 }
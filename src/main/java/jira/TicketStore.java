@@ -0,0 +1,135 @@
+package jira;
+
+import model.JiraTicket;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Local copy of the Jira tickets of a project, together with the watermark of the last synchronization.
+ * It is saved in a compact binary file that is loaded much faster than re-downloading and parsing the JSON.
+ * Tickets are kept sorted by key (project, then number), so their order does not depend on the history
+ * of the synchronizations.
+ */
+public class TicketStore {
+
+    private static final int MAGIC = 0x4A545354; // "JTST"
+    private static final int FORMAT_VERSION = 1;
+    private static final Comparator<String> KEY_ORDER = Comparator
+            .comparing((String key) -> key.substring(0, key.lastIndexOf('-') + 1))
+            .thenComparingLong(key -> issueNumber(key))
+            .thenComparing(Comparator.naturalOrder());
+
+    private final Map<String, JiraTicket> tickets;
+    private String watermark;
+
+    private TicketStore(String watermark, Map<String, JiraTicket> tickets) {
+        this.watermark = watermark;
+        this.tickets = tickets;
+    }
+
+    /**
+     * @param file the store file
+     * @return the stored tickets, or an empty store if the file does not exist or is not readable
+     */
+    public static TicketStore load(Path file) {
+        Map<String, JiraTicket> tickets = new TreeMap<>(KEY_ORDER);
+        if (!Files.exists(file))
+            return new TicketStore(null, tickets);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return new TicketStore(null, tickets);
+            String watermark = in.readUTF();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String key = in.readUTF();
+                String creation = in.readUTF();
+                String fix = in.readUTF();
+                int numVersions = in.readInt();
+                List<String> versions = new ArrayList<>(numVersions);
+                for (int j = 0; j < numVersions; j++) {
+                    versions.add(in.readUTF());
+                }
+                tickets.put(key, new JiraTicket(key, creation, fix, versions));
+            }
+            return new TicketStore(watermark, tickets);
+        } catch (IOException e) {
+            // a truncated or corrupted store is simply rebuilt from scratch
+            return new TicketStore(null, new TreeMap<>(KEY_ORDER));
+        }
+    }
+
+    /**
+     * @return the date (yyyy-MM-dd) from which the tickets have to be synchronized, or null if the store is empty
+     */
+    public String getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Adds the new tickets and replaces the stored ones with the same key.
+     */
+    public void merge(Collection<JiraTicket> updatedTickets) {
+        for (JiraTicket ticket : updatedTickets) {
+            tickets.put(ticket.getKey(), ticket);
+        }
+    }
+
+    /**
+     * Removes the tickets with the given keys, if stored.
+     */
+    public void remove(Collection<String> keys) {
+        for (String key : keys) {
+            tickets.remove(key);
+        }
+    }
+
+    /**
+     * @return the stored tickets, sorted by key
+     */
+    public List<JiraTicket> getTickets() {
+        return new ArrayList<>(tickets.values());
+    }
+
+    public void save(Path file, String newWatermark) throws IOException {
+        this.watermark = newWatermark;
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(newWatermark);
+                out.writeInt(tickets.size());
+                for (JiraTicket ticket : tickets.values()) {
+                    out.writeUTF(ticket.getKey());
+                    out.writeUTF(ticket.getCreationDate());
+                    out.writeUTF(ticket.getFixedDate());
+                    out.writeInt(ticket.getAffectedVersions().size());
+                    for (String version : ticket.getAffectedVersions()) {
+                        out.writeUTF(version);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static long issueNumber(String key) {
+        try {
+            return Long.parseLong(key.substring(key.lastIndexOf('-') + 1));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package json;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared HTTP transport used for all the REST calls.
+ * A single {@link HttpClient} keeps the connections open and reuses them across requests
+ * (multiplexing them when the server speaks HTTP/2), asks for gzip-compressed responses
+ * and collects the latency of each request.
+ * Besides the connection and the response headers, the reading of the body is bounded too:
+ * a read that receives no data within the read timeout fails instead of hanging forever.
+ */
+public class HttpTransport {
+
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+    private static HttpTransport instance = null;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final Duration readTimeout;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public static synchronized HttpTransport getInstance() {
+        if (instance == null)
+            instance = new HttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_READ_TIMEOUT);
+        return instance;
+    }
+
+    /**
+     * Replaces the shared transport with one using the given timeouts.
+     *
+     * @param connectTimeout maximum time to establish a connection
+     * @param requestTimeout maximum time to receive the response headers of a request
+     * @param readTimeout    maximum time to wait for the next data of a response body
+     */
+    public static synchronized void configure(Duration connectTimeout, Duration requestTimeout, Duration readTimeout) {
+        instance = new HttpTransport(connectTimeout, requestTimeout, readTimeout);
+    }
+
+    protected HttpTransport(Duration connectTimeout, Duration requestTimeout, Duration readTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sends a GET request and waits for the response headers.
+     *
+     * @param url     the requested url
+     * @param headers additional request headers
+     * @return the response, whose body is read as a stream
+     */
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return toResponse(client.send(buildRequest(url, headers), HttpResponse.BodyHandlers.ofInputStream()), start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        }
+    }
+
+    /**
+     * Sends a GET request without blocking the calling thread.
+     *
+     * @param url     the requested url
+     * @param headers additional request headers
+     * @return the response, completed when its headers are received; its body is read as a stream
+     */
+    public CompletableFuture<Response> getAsync(String url, Map<String, String> headers) {
+        long start = System.nanoTime();
+        return client.sendAsync(buildRequest(url, headers), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> toResponse(response, start));
+    }
+
+    private HttpRequest buildRequest(String url, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+    private Response toResponse(HttpResponse<InputStream> response, long start) {
+        long latency = System.nanoTime() - start;
+        requests.increment();
+        totalLatencyNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        return new Response(response.statusCode(), response.headers(),
+                new ReadTimeoutInputStream(response.body(), readTimeout), latency);
+    }
+
+    private static ScheduledThreadPoolExecutor createWatchdog() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, task -> {
+            Thread thread = new Thread(task, "http-read-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    public Metrics getMetrics() {
+        long count = requests.sum();
+        long total = totalLatencyNanos.sum();
+        return new Metrics(count, count == 0 ? 0 : total / count / 1_000_000, maxLatencyNanos.get() / 1_000_000);
+    }
+
+    /**
+     * Response of a request.
+     *
+     * @param status       HTTP status code
+     * @param headers      response headers
+     * @param rawBody      body as sent by the server, possibly compressed
+     * @param latencyNanos time elapsed from the request to the reception of the response headers
+     */
+    public record Response(int status, HttpHeaders headers, InputStream rawBody, long latencyNanos) {
+
+        public String header(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
+        /**
+         * @return the body of the response, decompressed if needed
+         */
+        public InputStream body() throws IOException {
+            if ("gzip".equalsIgnoreCase(header("Content-Encoding")))
+                return new GZIPInputStream(rawBody);
+            return rawBody;
+        }
+
+        /**
+         * Releases the connection when the body is not going to be read.
+         */
+        public void discard() throws IOException {
+            rawBody.close();
+        }
+    }
+
+    /**
+     * Body stream whose reads fail if no data arrives within the timeout. The {@link HttpRequest#timeout(Duration)}
+     * only bounds the wait for the response headers, so a server stalling in the middle of the body would otherwise
+     * block the reader forever: when a read times out the stream is closed, which releases the blocked reader.
+     */
+    private static class ReadTimeoutInputStream extends FilterInputStream {
+
+        private final long timeoutNanos;
+        private volatile boolean timedOut = false;
+
+        ReadTimeoutInputStream(InputStream in, Duration timeout) {
+            super(in);
+            this.timeoutNanos = timeout.toNanos();
+        }
+
+        @Override
+        public int read() throws IOException {
+            ScheduledFuture<?> deadline = arm();
+            try {
+                return check(in.read());
+            } catch (IOException e) {
+                check(0);
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            ScheduledFuture<?> deadline = arm();
+            try {
+                return check(in.read(b, off, len));
+            } catch (IOException e) {
+                check(0);
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        }
+
+        private ScheduledFuture<?> arm() {
+            return WATCHDOG.schedule(this::expire, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void expire() {
+            timedOut = true;
+            try {
+                in.close();
+            } catch (IOException e) {
+                // the stream is being abandoned anyway
+            }
+        }
+
+        private int check(int result) throws HttpTimeoutException {
+            // the closed stream makes the blocked read return, either with an error or as if the body ended
+            if (timedOut)
+                throw new HttpTimeoutException("No data received for " + Duration.ofNanos(timeoutNanos).toSeconds() + " s");
+            return result;
+        }
+    }
+
+    /**
+     * @param requests          number of completed requests
+     * @param avgLatencyMillis  average latency of the requests
+     * @param maxLatencyMillis  maximum latency of the requests
+     */
+    public record Metrics(long requests, long avgLatencyMillis, long maxLatencyMillis) {
+        @Override
+        public String toString() {
+            return String.format("HTTP requests: %d\tAverage latency: %d ms\tMax latency: %d ms", requests, avgLatencyMillis, maxLatencyMillis);
+        }
+    }
+}
@@ -2,29 +2,240 @@ package json;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.*;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 public class JSONReader {
 
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static ResponseCache cache = null;
+
     private JSONReader(){}
 
-    private static String readAll(Reader rd) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int cp;
-        while ((cp = rd.read()) != -1) {
-            sb.append((char) cp);
-        }
-        return sb.toString();
+    /**
+     * Parser of a response, reading it as a stream of characters.
+     *
+     * @param <T> type of the parsed response
+     */
+    @FunctionalInterface
+    public interface ResponseParser<T> {
+        T parse(Reader reader) throws IOException;
+    }
+
+    /**
+     * Action executed right before a request is sent over the network (e.g. rate limiting);
+     * it is not executed for responses served by the cache.
+     */
+    @FunctionalInterface
+    public interface RequestGuard {
+        void beforeRequest() throws IOException;
+    }
+
+    /**
+     * Enables the on-disk cache of the responses for all the following requests.
+     *
+     * @param responseCache the cache to be used, or null to always use the network
+     */
+    public static synchronized void setCache(ResponseCache responseCache) {
+        cache = responseCache;
+    }
+
+    private static synchronized ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return true if the responses can only be read from the cache, without using the network
+     */
+    public static boolean isOffline() {
+        ResponseCache responseCache = getCache();
+        return responseCache != null && responseCache.isOffline();
     }
 
     public static JSONObject readJsonFromUrl(String url) throws IOException, JSONException {
-        try (InputStream is = new URL(url).openStream()) {
-            BufferedReader rd = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-            String jsonText = readAll(rd);
-            return new JSONObject(jsonText);
+        return readFromUrl(url, reader -> new JSONObject(new JSONTokener(reader)));
+    }
+
+    /**
+     * Parses the response of the url while it is downloaded, without buffering it in memory.
+     * If the cache is enabled, the response is read from the cache or written to it while parsed.
+     *
+     * @param url    the requested url
+     * @param parser the parser of the response
+     * @return the parsed response
+     */
+    public static <T> T readFromUrl(String url, ResponseParser<T> parser) throws IOException {
+        return readFromUrl(url, parser, () -> {});
+    }
+
+    /**
+     * @param url    the requested url
+     * @param parser the parser of the response
+     * @param guard  action executed only if the network has to be used
+     * @return the parsed response
+     * @see #readFromUrl(String, ResponseParser)
+     */
+    public static <T> T readFromUrl(String url, ResponseParser<T> parser, RequestGuard guard) throws IOException {
+        ResponseCache responseCache = getCache();
+        ResponseCache.Entry entry = responseCache == null ? null : responseCache.lookup(url);
+        if (isServedByCache(url, responseCache, entry))
+            return parse(entry.body(), parser);
+
+        guard.beforeRequest();
+        HttpTransport.Response response = HttpTransport.getInstance().get(url, requestHeaders(entry));
+        return readResponse(url, responseCache, entry, checkStatus(url, response, entry), parser);
+    }
+
+    /**
+     * Asynchronous version of {@link #readFromUrl(String, ResponseParser, RequestGuard)}: the calling thread only
+     * runs the guard and sends the request, while the response is parsed by the executor once its headers arrive.
+     * A response served by the cache is parsed by the calling thread.
+     *
+     * @param url      the requested url
+     * @param parser   the parser of the response
+     * @param guard    action executed only if the network has to be used
+     * @param executor the executor parsing the response
+     * @return the parsed response
+     */
+    public static <T> CompletableFuture<T> readFromUrlAsync(String url, ResponseParser<T> parser, RequestGuard guard,
+                                                            Executor executor) throws IOException {
+        ResponseCache responseCache = getCache();
+        ResponseCache.Entry entry = responseCache == null ? null : responseCache.lookup(url);
+        if (isServedByCache(url, responseCache, entry))
+            return CompletableFuture.completedFuture(parse(entry.body(), parser));
+
+        guard.beforeRequest();
+        return HttpTransport.getInstance().getAsync(url, requestHeaders(entry)).thenApplyAsync(response -> {
+            try {
+                return readResponse(url, responseCache, entry, checkStatus(url, response, entry), parser);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * @return true if the response has to be read from the cache, without asking the server
+     */
+    private static boolean isServedByCache(String url, ResponseCache responseCache, ResponseCache.Entry entry) throws IOException {
+        if (responseCache == null)
+            return false;
+        if (responseCache.isOffline()) {
+            if (entry == null)
+                throw new FileNotFoundException("Offline mode: no cached response for " + url);
+            return true;
+        }
+        return entry != null && responseCache.isFresh(entry);
+    }
+
+    /**
+     * Parses the response of the server, caching it if the cache is enabled.
+     *
+     * @param entry the cached response that has been revalidated, or null
+     */
+    private static <T> T readResponse(String url, ResponseCache responseCache, ResponseCache.Entry entry,
+                                      HttpTransport.Response response, ResponseParser<T> parser) throws IOException {
+        if (responseCache == null) {
+            try (InputStream is = response.body()) {
+                return parse(is, parser);
+            }
+        }
+        if (response.status() == HTTP_NOT_MODIFIED) {
+            response.discard();
+            return parse(responseCache.refresh(url, entry).body(), parser);
+        }
+        try (ResponseCache.PendingEntry pending = responseCache.newEntry(url, response.header("ETag"), response.header("Last-Modified"));
+             InputStream is = new TeeInputStream(response.body(), pending)) {
+            T result = parse(is, parser);
+            // the parser may not read the trailing part of the response, but the whole body has to be cached
+            is.transferTo(OutputStream.nullOutputStream());
+            pending.commit();
+            return result;
+        }
+    }
+
+    private static <T> T parse(InputStream is, ResponseParser<T> parser) throws IOException {
+        return parser.parse(new InputStreamReader(is, StandardCharsets.UTF_8));
+    }
+
+    private static <T> T parse(Path body, ResponseParser<T> parser) throws IOException {
+        try (InputStream is = Files.newInputStream(body)) {
+            return parse(is, parser);
+        }
+    }
+
+    /**
+     * @param cached the cached response to be revalidated, or null
+     * @return the headers asking the server to revalidate the cached response
+     */
+    private static Map<String, String> requestHeaders(ResponseCache.Entry cached) {
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.etag() != null)
+                headers.put("If-None-Match", cached.etag());
+            if (cached.lastModified() != null)
+                headers.put("If-Modified-Since", cached.lastModified());
+        }
+        return headers;
+    }
+
+    /**
+     * @param cached the cached response that has been revalidated, or null
+     * @return the response, whose status is either OK or, only if a cached response has been given, NOT MODIFIED
+     */
+    private static HttpTransport.Response checkStatus(String url, HttpTransport.Response response, ResponseCache.Entry cached) throws IOException {
+        int status = response.status();
+        if (status == HTTP_NOT_MODIFIED && cached != null) {
+            return response;
+        }
+        if (status != HTTP_OK) {
+            response.discard();
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+        }
+        return response;
+    }
+
+    /**
+     * Copies to a second stream all the bytes read from the wrapped one.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                copy.write(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                copy.write(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes must be copied too
+            return Math.max(read(new byte[(int) Math.min(n, 8192)]), 0);
         }
     }
 }
@@ -0,0 +1,368 @@
+package json;
+
+import org.json.JSONException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull parser reading JSON tokens straight from a stream, without building a tree.
+ * Values that are not needed can be skipped with {@link #skipValue()}, which does not allocate
+ * strings for them.
+ */
+public class JsonPullParser implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+
+    private int[] stack = new int[32];
+    private int stackSize = 0;
+    private Token peeked = null;
+
+    public JsonPullParser(Reader in) {
+        this.in = in;
+        push(EMPTY_DOCUMENT);
+    }
+
+    /**
+     * @return the type of the next token, without consuming it
+     */
+    public Token peek() throws IOException {
+        if (peeked != null)
+            return peeked;
+
+        int c;
+        switch (stack[stackSize - 1]) {
+            case EMPTY_ARRAY -> {
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']')
+                    return peeked = Token.END_ARRAY;
+                if (c != -1)
+                    pos--;
+            }
+            case NONEMPTY_ARRAY -> {
+                c = nextNonWhitespace();
+                if (c == ']')
+                    return peeked = Token.END_ARRAY;
+                if (c != ',')
+                    throw syntaxError("Expected ',' or ']'");
+            }
+            case EMPTY_OBJECT, NONEMPTY_OBJECT -> {
+                c = nextNonWhitespace();
+                if (stack[stackSize - 1] == NONEMPTY_OBJECT) {
+                    if (c == '}')
+                        return peeked = Token.END_OBJECT;
+                    if (c != ',')
+                        throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                } else if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (c != '"')
+                    throw syntaxError("Expected a name");
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            }
+            case DANGLING_NAME -> stack[stackSize - 1] = NONEMPTY_OBJECT;
+            case EMPTY_DOCUMENT -> stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+            default -> {
+                if (nextNonWhitespace() == -1)
+                    return peeked = Token.END_DOCUMENT;
+                throw syntaxError("Expected the end of the document");
+            }
+        }
+        return peeked = peekValue();
+    }
+
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't', 'f':
+                pos--;
+                return Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of the document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        String name = readString();
+        consumeColon();
+        return name;
+    }
+
+    /**
+     * @return the next string value; numbers are returned as their literal
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        peeked = null;
+        if (token == Token.STRING)
+            return readString();
+        if (token == Token.NUMBER)
+            return readLiteral();
+        throw syntaxError("Expected a string but was " + token);
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        String literal = readLiteral();
+        if (literal.equals("true"))
+            return true;
+        if (literal.equals("false"))
+            return false;
+        throw syntaxError("Expected a boolean but was " + literal);
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        String literal = readLiteral();
+        if (!literal.equals("null"))
+            throw syntaxError("Expected null but was " + literal);
+    }
+
+    public long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        String literal = readLiteral();
+        try {
+            return Long.parseLong(literal);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(literal);
+        }
+    }
+
+    public int nextInt() throws IOException {
+        return Math.toIntExact(nextLong());
+    }
+
+    /**
+     * Skips the next value, recursively skipping nested objects and arrays.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+                case BEGIN_OBJECT -> {
+                    beginObject();
+                    depth++;
+                }
+                case BEGIN_ARRAY -> {
+                    beginArray();
+                    depth++;
+                }
+                case END_OBJECT -> {
+                    endObject();
+                    depth--;
+                }
+                case END_ARRAY -> {
+                    endArray();
+                    depth--;
+                }
+                case NAME -> {
+                    peeked = null;
+                    skipString();
+                    consumeColon();
+                }
+                case STRING -> {
+                    peeked = null;
+                    skipString();
+                }
+                case NUMBER, BOOLEAN, NULL -> {
+                    peeked = null;
+                    skipLiteral();
+                }
+                default -> throw syntaxError("Unexpected end of the document");
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected)
+            throw syntaxError("Expected " + expected + " but was " + token);
+        peeked = null;
+    }
+
+    private void push(int context) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = context;
+    }
+
+    private void consumeColon() throws IOException {
+        if (nextNonWhitespace() != ':')
+            throw syntaxError("Expected ':'");
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[pos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+        return c;
+    }
+
+    /* The opening quote has already been consumed */
+    private String readString() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = read()) != '"') {
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c == '\\')
+                builder.append(readEscape());
+            else
+                builder.append((char) c);
+        }
+        return builder.toString();
+    }
+
+    private void skipString() throws IOException {
+        int c;
+        while ((c = read()) != '"') {
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c == '\\')
+                readEscape();
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0)
+                        throw syntaxError("Invalid unicode escape");
+                    code = (code << 4) + digit;
+                }
+                return (char) code;
+            case -1:
+                throw syntaxError("Unterminated escape sequence");
+            default:
+                // \" \\ \/
+                return (char) c;
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int c;
+        while ((c = read()) != -1) {
+            if (isLiteralEnd(c)) {
+                pos--;
+                break;
+            }
+            builder.append((char) c);
+        }
+        return builder.toString();
+    }
+
+    private void skipLiteral() throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            if (isLiteralEnd(c)) {
+                pos--;
+                break;
+            }
+        }
+    }
+
+    private static boolean isLiteralEnd(int c) {
+        return c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + pos);
+    }
+}
@@ -0,0 +1,205 @@
+package json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * On-disk cache of HTTP responses.
+ * Response bodies are content-addressed: they are stored once under the SHA-256 of their content,
+ * while a small metadata file, named after the SHA-256 of the url, points to the body and keeps
+ * the validators (ETag, Last-Modified) needed to revalidate the response with the server.
+ */
+public class ResponseCache {
+
+    private static final String OBJECTS_DIR = "objects";
+    private static final String ENTRIES_DIR = "entries";
+    private static final String URL = "url";
+    private static final String CONTENT = "content";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String FETCHED_AT = "fetchedAt";
+
+    private final Path directory;
+    private final Duration ttl;
+    private final boolean offline;
+
+    /**
+     * @param directory root directory of the cache; it is created if it does not exist
+     * @param ttl       time after which a cached response must be revalidated with the server
+     * @param offline   if true, responses are served only from the cache and the network is never used
+     */
+    public ResponseCache(Path directory, Duration ttl, boolean offline) throws IOException {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.offline = offline;
+        Files.createDirectories(directory.resolve(OBJECTS_DIR));
+        Files.createDirectories(directory.resolve(ENTRIES_DIR));
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * @param url the requested url
+     * @return the cached response of the url, or null if the url has never been cached
+     */
+    public Entry lookup(String url) throws IOException {
+        Path entryPath = entryPath(url);
+        if (!Files.exists(entryPath))
+            return null;
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(entryPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Path body = objectPath(properties.getProperty(CONTENT));
+        if (!url.equals(properties.getProperty(URL)) || !Files.exists(body)) {
+            // hash collision or body removed by hand: the entry is not usable
+            return null;
+        }
+        return new Entry(body, properties.getProperty(ETAG), properties.getProperty(LAST_MODIFIED),
+                Long.parseLong(properties.getProperty(FETCHED_AT, "0")));
+    }
+
+    /**
+     * @param entry a cached response
+     * @return true if the response can be served without revalidation
+     */
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt() < ttl.toMillis();
+    }
+
+    /**
+     * Starts storing a new response of the url; the body has to be written to the returned
+     * entry, which replaces the previous response of the url only when committed.
+     */
+    public PendingEntry newEntry(String url, String etag, String lastModified) throws IOException {
+        return new PendingEntry(url, etag, lastModified);
+    }
+
+    /**
+     * Marks a cached response as just revalidated by the server (HTTP 304).
+     *
+     * @return the refreshed entry
+     */
+    public Entry refresh(String url, Entry entry) throws IOException {
+        Entry refreshed = new Entry(entry.body(), entry.etag(), entry.lastModified(), System.currentTimeMillis());
+        writeEntry(url, entry.body().getFileName().toString(), refreshed);
+        return refreshed;
+    }
+
+    private void writeEntry(String url, String content, Entry entry) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(URL, url);
+        properties.setProperty(CONTENT, content);
+        properties.setProperty(FETCHED_AT, Long.toString(entry.fetchedAt()));
+        if (entry.etag() != null)
+            properties.setProperty(ETAG, entry.etag());
+        if (entry.lastModified() != null)
+            properties.setProperty(LAST_MODIFIED, entry.lastModified());
+        StringWriter writer = new StringWriter();
+        properties.store(writer, null);
+        writeAtomically(entryPath(url), writer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path entryPath(String url) {
+        return directory.resolve(ENTRIES_DIR).resolve(sha256(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Path objectPath(String content) {
+        return directory.resolve(OBJECTS_DIR).resolve(content);
+    }
+
+    private static void writeAtomically(Path target, byte[] data) throws IOException {
+        // concurrent requests may write the same file: each one writes its own temporary file and then moves it
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(newDigest().digest(data));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * A response being written to the cache. The body is written to a temporary file
+     * while its digest is computed; closing the entry without committing it discards the body.
+     */
+    public class PendingEntry extends OutputStream {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final Path tmp;
+        private final DigestOutputStream out;
+        private boolean committed = false;
+
+        private PendingEntry(String url, String etag, String lastModified) throws IOException {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.tmp = Files.createTempFile(directory.resolve(OBJECTS_DIR), "response", ".tmp");
+            this.out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), newDigest());
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        /**
+         * @return the stored entry, which replaces the previous response of the url
+         */
+        public Entry commit() throws IOException {
+            out.close();
+            String content = HexFormat.of().formatHex(out.getMessageDigest().digest());
+            Path bodyPath = objectPath(content);
+            Files.move(tmp, bodyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            Entry entry = new Entry(bodyPath, etag, lastModified, System.currentTimeMillis());
+            writeEntry(url, content, entry);
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+            if (!committed)
+                Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * A cached response.
+     *
+     * @param body         file containing the body of the response
+     * @param etag         ETag header of the response, if any
+     * @param lastModified Last-Modified header of the response, if any
+     * @param fetchedAt    time of the last download or revalidation, in milliseconds
+     */
+    public record Entry(Path body, String etag, String lastModified, long fetchedAt) {
+    }
+}
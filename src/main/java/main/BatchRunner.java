@@ -0,0 +1,91 @@
+package main;
+
+import git.GitSingleton;
+import org.eclipse.jgit.api.Git;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the pipeline of many projects in the same JVM, so that the warm-up of the JVM and the loading
+ * of Weka classes are paid only once.
+ * Projects run concurrently on a shared pool of threads, but a project starts only when its share
+ * of the global memory budget is available.
+ */
+public class BatchRunner {
+
+    private final int threads;
+    private final long memoryBudgetMb;
+    private final Semaphore memory;
+    private final Logger logger;
+
+    /**
+     * @param repoPath path of the local Git repository
+     * @param jiraKey  Jira key of the project (e.g. BOOKKEEPER)
+     * @param memoryMb heap reserved for the analysis of the project
+     */
+    public record Project(String repoPath, String jiraKey, long memoryMb) {
+    }
+
+    /**
+     * @param threads        maximum number of projects analyzed at the same time
+     * @param memoryBudgetMb heap shared by all the running projects
+     * @param logger         the logger
+     */
+    public BatchRunner(int threads, long memoryBudgetMb, Logger logger) {
+        this.threads = threads;
+        this.memoryBudgetMb = memoryBudgetMb;
+        this.memory = new Semaphore((int) Math.min(memoryBudgetMb, Integer.MAX_VALUE), true);
+        this.logger = logger;
+    }
+
+    /**
+     * Runs all the projects and waits for their completion.
+     * The failure of a project is logged and does not stop the others.
+     */
+    public void runAll(List<Project> projects) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Project project : projects) {
+            futures.add(pool.submit(() -> {
+                runProject(project);
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                String log = String.format("Analysis of project %s failed", projects.get(i).jiraKey());
+                logger.log(Level.SEVERE, log, e.getCause());
+            }
+        }
+    }
+
+    private void runProject(Project project) throws Exception {
+        // a project asking for more than the whole budget would never start
+        int permits = (int) Math.max(1, Math.min(project.memoryMb(), memoryBudgetMb));
+        memory.acquire(permits);
+        try {
+            // a Git wrapping an existing repository does not close it, so the repository is closed explicitly
+            Git git = GitSingleton.open(project.repoPath());
+            try {
+                String log = String.format("Project %s started", project.jiraKey());
+                logger.info(log);
+                long start = System.nanoTime();
+                new ProjectPipeline(project.jiraKey(), git, logger).run();
+                log = String.format("Project %s completed in %d s", project.jiraKey(), TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+                logger.info(log);
+            } finally {
+                git.getRepository().close();
+            }
+        } finally {
+            memory.release(permits);
+        }
+    }
+}
@@ -7,291 +7,193 @@ package main;
  *
  */
 
-import controller.*;
-import csv.CSVManager;
-import git.GitAnalyzer;
-import git.GitCommitFactory;
+import controller.DatasetCreator;
+import controller.DiffMode;
+import controller.DiffPrefetcher;
+import controller.GitManager;
+import controller.MergePolicy;
 import git.GitSingleton;
-import jira.RetrieveTicketsID;
+import git.LocStatsCache;
+import git.PathGlobFilter;
+import json.HttpTransport;
+import json.JSONReader;
+import json.ResponseCache;
 import logging.LoggerSingleton;
-import model.Bug;
-import model.DatasetInstance;
-import model.GitCommit;
-import model.JiraTicket;
-import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.revwalk.RevCommit;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
-import weka.ClassifierEvaluation;
-import weka.CostSensitivity;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.*;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Main {
 
-    private static List<GitCommit> retrieveCommitsWithJiraTickets(List<JiraTicket> tickets, Date maxDate) throws GitAPIException {
-        List<GitCommit> commits = new ArrayList<>();
-        List<RevCommit> revCommits = new ArrayList<>();
-
-        for (JiraTicket ticket : tickets) {
-            GitAnalyzer analyzer = new GitAnalyzer();
-            // get the entire log of commits
-            Iterable<RevCommit> gitLog = analyzer.getGitLog(GitSingleton.getInstance().getGit(), maxDate);
-            // here we pass the ticket as a keyword to be searched in commit message
-            ArrayList<RevCommit> results = new ArrayList<>(analyzer.getCommitsContainingString(gitLog, ticket.getKey()));
-
-            GitCommitFactory factory = GitCommitFactory.getInstance();
-            for (RevCommit commit : results) {
-                if (!revCommits.contains(commit)) {
-                    // avoid duplicates (commits that refer more than 1 Jira ticket)
-                    // it's maintained only the reference to a single Jira ticket for simplicity
-                    revCommits.add(commit);
-                    commits.add(factory.parseCommit(commit, ticket.getKey()));
-                }
-            }
-        }
-        commits.sort((a, b) -> {
-            int aCommitTime = a.getRevCommit().getCommitTime();
-            int bCommitTime = b.getRevCommit().getCommitTime();
-            if (aCommitTime > bCommitTime)
-                return 1;
-            else if (aCommitTime == bCommitTime)
-                return 0;
-            return -1;
-        });
-        return commits;
-    }
+    private static LocStatsCache locStatsCache;
 
     public static void main(String[] args) throws Exception {
-        String log;
         InputStream resource = Main.class.getClassLoader().getResourceAsStream("config.json");
-        String projectName;
+        JSONObject obj;
         if (resource != null) {
             BufferedReader config = new BufferedReader(new InputStreamReader(resource));
-            JSONObject obj = (JSONObject) new JSONParser().parse(config);
-            String result = (String) obj.get("repo");
-            String[] strings = result.split("\\\\");
-            projectName = strings[strings.length - 1].toUpperCase(Locale.ROOT);
+            obj = (JSONObject) new JSONParser().parse(config);
+            configureResponseCache(obj);
+            configureHttpTransport(obj);
+            configureLocStatsCache(obj);
+            configurePathFilter(obj);
+            configureDiffMode(obj);
+            configureLabelOnly(obj);
         } else {
             throw new IllegalArgumentException("Project name not found");
         }
         Logger logger = LoggerSingleton.getInstance().getLogger();
 
+        try {
+            JSONArray projects = (JSONArray) obj.get("projects");
+            if (projects != null) {
+                // batch mode: all the listed projects are analyzed in this JVM
+                runBatch(obj, projects, logger);
+                return;
+            }
 
-        /*--------------------------------------------------------JIRA (RELEASES + TICKETS)-------------------------------------------------------*/
-
-        /*
-        The setReleases() method of the VersionManager class retrieves all the released version for the specified project,
-        store them sorted chronologically, both all versions and the first half of them.
-         */
-        logger.info("Retrieving project's releases from Jira ...");
-        VersionManager versionManager = new VersionManager(projectName, logger);
-        versionManager.setReleases();
-        Date maxDate = versionManager.getLatestReleaseDate();
-
-        log = String.format("Retrieved releases: %d\tLatest release date: %s", versionManager.getReleasesSize(), maxDate.toString());
-        logger.info(log);
-        /*
-         * Now, let's interact with Jira again to retrieve tickets of all fixed bugs
-         * */
-        List<JiraTicket> tickets = RetrieveTicketsID.getTicketsID(projectName);
-        log = String.format("Jira tickets: %d", tickets.size());
-        logger.info(log);
-
-        /*---------------------------------------------------------------------GIT-------------------------------------------------------------*/
-        /*
-         * Now, for each ticket, let see in which Git commit it is present
-         * */
-
-        logger.info("\nRetrieving commits from Git ...");
-        List<GitCommit> fixCommits = retrieveCommitsWithJiraTickets(tickets, maxDate);
-        List<RevCommit> allCommits = new GitAnalyzer().getDatetimeSortedGitLog(GitSingleton.getInstance().getGit(), maxDate);
-
-        log = String.format("Total commits: %d", allCommits.size());
-        logger.info(log);
-        log = String.format("Fix commits: %d", fixCommits.size());
-        logger.info(log);
-
-        /*---------------------------------------------------------------------BUGS----------------------------------------------------------*/
-
-        // Let's create a list of bugs objects from the jira tickets and then refine them with consistency checks
-        List<Bug> bugs = new ArrayList<>();
-        for (JiraTicket ticket : tickets) {
-            bugs.add(new Bug(ticket));
-        }
-
-        refineBugsList(bugs, fixCommits);
-
-        bugs = versionManager.calculateVersionsForBugs(bugs);
-        logger.info("\nIdentification of FV, OV, AVs and IV for bugs. DONE");
-
-        Map<String, List<RevCommit>> commitPerRelease = versionManager.splitCommitsPerRelease(allCommits);
-        logger.info("\nSplit commits by releases. DONE");
-
-        /*-----------------------------------------------DATASET CREATION------------------------------------------------------*/
-
-        GitManager gitManager = new GitManager(GitSingleton.getInstance().getGit());
-        DatasetCreator datasetCreator = new DatasetCreator(versionManager, gitManager, bugs, logger);
-
-        logger.info("\nDataset creation begins ...\n");
-        List<DatasetInstance> dataset = datasetCreator.computeDataset(commitPerRelease);
-        Map<String, List<DatasetInstance>> datasetsWithSnoring = datasetCreator.getMultipleDatasets();
-        logger.info("\nDataset creation. DONE");
-
-        // remove duplicated instances from both dataset and datasetWithSnoring
-        removeDatasetDuplicates(dataset, datasetsWithSnoring, logger);
-
-        // Building the CSV file
-        List<String[]> arrayOfCSVEntry = new ArrayList<>();
-        // add headings
-        String[] csvHeader = buildDatasetHeader();
-
-        arrayOfCSVEntry.add(csvHeader);
-
-        for (DatasetInstance entry : dataset) {
-            arrayOfCSVEntry.add(entry.toStringArray());
+            String result = (String) obj.get("repo");
+            String[] strings = result.split("\\\\");
+            String projectName = strings[strings.length - 1].toUpperCase(Locale.ROOT);
+            new ProjectPipeline(projectName, GitSingleton.getInstance().getGit(), logger).run();
+        } finally {
+            flushLocStatsCache(logger);
         }
+    }
 
-        CSVManager.csvWriteAll(projectName.toLowerCase(Locale.ROOT) + "_dataset.csv", arrayOfCSVEntry);
-
-
-        /*--------------------------------------------------------------WEKA-----------------------------------------------------------*/
-
-        // throw away the first 2 columns (release and filename)
-        String[] wekaHeader = Arrays.copyOfRange(csvHeader, 2, csvHeader.length);
-
-        WekaController wekaController = new WekaController(projectName, datasetsWithSnoring, wekaHeader);
-        logger.info("Walk Forward technique to evaluate classifiers is running ...");
-
-        // Do the comparison of results changing the cost sensitivity technique
-        for (CostSensitivity sensitivity : CostSensitivity.values()) {
-            log = "Classifiers evaluation with cost sensitivity policy: " + sensitivity.toString();
-            logger.info(log);
-            List<ClassifierEvaluation> evaluations = wekaController.walkForwardWithSnoring(sensitivity);
-            List<String[]> evaluationsToCsv = new ArrayList<>();
-            String[] header = buildClassifiersHeader();
-            evaluationsToCsv.add(header);
-            for (ClassifierEvaluation ce : evaluations) {
-                evaluationsToCsv.add(ce.toStringArray(projectName));
-            }
-            StringBuilder builder = new StringBuilder();
-            builder.append(projectName).append("_").append(sensitivity.toString()).append(".csv");
-            CSVManager.csvWriteAll(builder.toString(), evaluationsToCsv);
+    /**
+     * Runs the pipeline for each entry of "projects", e.g. {"repo": "path/to/bookkeeper", "jira": "BOOKKEEPER", "memoryMb": 1024}.
+     * Optional keys are "batchThreads" (projects analyzed at the same time, default 2) and "memoryBudgetMb"
+     * (heap shared by the running projects, default 80% of the maximum heap); "memoryMb" of a project defaults
+     * to the whole budget divided by the number of threads.
+     */
+    private static void runBatch(JSONObject config, JSONArray projects, Logger logger) throws InterruptedException {
+        Number batchThreads = (Number) config.get("batchThreads");
+        int threads = batchThreads != null ? batchThreads.intValue() : 2;
+        Number memoryBudget = (Number) config.get("memoryBudgetMb");
+        long budget = memoryBudget != null ? memoryBudget.longValue()
+                : (long) (Runtime.getRuntime().maxMemory() / (1024 * 1024) * 0.8);
+
+        List<BatchRunner.Project> batch = new ArrayList<>();
+        for (Object entry : projects) {
+            JSONObject project = (JSONObject) entry;
+            Number memory = (Number) project.get("memoryMb");
+            batch.add(new BatchRunner.Project((String) project.get("repo"),
+                    ((String) project.get("jira")).toUpperCase(Locale.ROOT), memory != null ? memory.longValue() : budget / threads));
         }
+        new BatchRunner(threads, budget, logger).runAll(batch);
     }
 
-    private static void refineBugsList(List<Bug> bugs, List<GitCommit> fixCommits){
-        // let's process bugs with commits to define fix commit and other commits for the specific bug
-        BugManager.setFixCommitAndOtherCommits(bugs, fixCommits);
-
-        /** now, remove bugs with no bounded commit and add metadata on which is its fixing commit
-         * That can be chosen in 2 ways:
-         *  - if Jira fix date corresponds to commit date, then that commit is the fix commit
-         *  - otherwise, the latest commit referring that bug is chosen as FixCommit
-         *
-         * Bugs with no such commits are removed from the list.
-         */
-
-        BugManager.patchFixCommit(bugs);
-
-        // sort bugs by time to avoid influence of future bugs on data of the past
-        // this allows to build training datasets Snoring-affected to be used in Walking Forward approach to validate the predictor
-        BugManager.sortBugsChronologically(bugs);
+    /**
+     * Enables the on-disk cache of the Jira responses if "cacheDirectory" is set in the configuration.
+     * Optional keys are "cacheTtlHours" (default 24) and "offline" (default false): in offline mode
+     * responses are served only from the cache, without any network access.
+     */
+    private static void configureResponseCache(JSONObject config) throws IOException {
+        String directory = (String) config.get("cacheDirectory");
+        if (directory == null)
+            return;
+        Number ttlHours = (Number) config.get("cacheTtlHours");
+        boolean offline = Boolean.TRUE.equals(config.get("offline"));
+        JSONReader.setCache(new ResponseCache(Path.of(directory), Duration.ofHours(ttlHours != null ? ttlHours.longValue() : 24),
+                offline));
     }
 
+    /**
+     * Enables the persistent cache of the lines added and deleted between two blobs
+     * if "locStatsCache" (the path of the cache file) is set in the configuration.
+     */
+    private static void configureLocStatsCache(JSONObject config) throws IOException {
+        String file = (String) config.get("locStatsCache");
+        if (file == null)
+            return;
+        locStatsCache = new LocStatsCache(Path.of(file));
+        DiffPrefetcher.setLocStatsCache(locStatsCache);
+    }
 
-    private static void removeDatasetDuplicates(List<DatasetInstance> dataset, Map<String,List<DatasetInstance>> datasetWithSnoring, Logger logger){
-        int numBuggy = 0;
-        int numDuplicates = 0;
-
-        HashMap<String, List<DatasetInstance>> datasetByRelease = new HashMap<>();
-        for (DatasetInstance instance : dataset) {
-            if (!datasetByRelease.containsKey(instance.getVersion())) {
-                datasetByRelease.put(instance.getVersion(), new ArrayList<>());
-            }
-            datasetByRelease.get(instance.getVersion()).add(instance);
-        }
-
-        List<DatasetInstance> toRemove = new ArrayList<>();
-        for (Map.Entry<String, List<DatasetInstance>> release : datasetByRelease.entrySet()) {
-            List<String> filenames = new ArrayList<>();
-
-            for (DatasetInstance instance : release.getValue()) {
-                if (instance.isBuggy()) {
-                    numBuggy++;
-                }
+    /**
+     * Sets the glob rules of the files to analyze if "includePaths" or "excludePaths" are set in the configuration;
+     * by default all the java files are analyzed, except the ones with a name (or in a directory) starting with "test".
+     */
+    private static void configurePathFilter(JSONObject config) {
+        JSONArray includes = (JSONArray) config.get("includePaths");
+        JSONArray excludes = (JSONArray) config.get("excludePaths");
+        if (includes == null && excludes == null)
+            return;
+        GitManager.setPathFilter(PathGlobFilter.create(toStrings(includes, "**/*.java"), toStrings(excludes, "**/test*")));
+    }
 
-                if (filenames.contains(instance.getFilename())) {
-                    numDuplicates++;
-                    toRemove.add(instance);
-                } else {
-                    filenames.add(instance.getFilename());
-                }
-            }
-        }
+    /**
+     * Sets what each commit is compared to if "diffMode" is set in the configuration: "chronological" (default,
+     * the previous commit in time order) or "first-parent"; in first-parent mode, "mergePolicy" tells how merge
+     * commits are compared to their parents: "skip" (default), "first-parent" or "combined".
+     */
+    private static void configureDiffMode(JSONObject config) {
+        String mode = (String) config.get("diffMode");
+        if (mode == null)
+            return;
+        String policy = (String) config.get("mergePolicy");
+        if (policy == null)
+            policy = "skip";
+        DatasetCreator.setDiffMode(DiffMode.valueOf(mode.toUpperCase(Locale.ROOT).replace('-', '_')),
+                MergePolicy.valueOf(policy.toUpperCase(Locale.ROOT).replace('-', '_')));
+    }
 
-        dataset.removeAll(toRemove);
+    /**
+     * Enables the label-only analysis of the releases after the first half if "labelOnlyAfterHalf" is true.
+     */
+    private static void configureLabelOnly(JSONObject config) {
+        DatasetCreator.setLabelOnlyAfterHalf(Boolean.TRUE.equals(config.get("labelOnlyAfterHalf")));
+    }
 
-        for (DatasetInstance i : toRemove){
-            datasetWithSnoring.get(i.getVersion()).remove(i);
+    private static List<String> toStrings(JSONArray array, String defaultValue) {
+        if (array == null)
+            return List.of(defaultValue);
+        List<String> strings = new ArrayList<>();
+        for (Object value : array) {
+            strings.add((String) value);
         }
+        return strings;
+    }
 
-        logger.info(System.getProperty("line.separator"));
-        String log = String.format("Dataset size: %d instances", dataset.size());
-        logger.info(log);
-        log = String.format("Buggy instances: %d", numBuggy);
-        logger.info(log);
-        log = String.format("Buggy percentage: %f %%", ((float) numBuggy / dataset.size()) * 100.0);
-        logger.info(log);
-        log = String.format("Number of duplicated instances: %d", numDuplicates);
+    private static void flushLocStatsCache(Logger logger) {
+        if (locStatsCache == null)
+            return;
+        String log = String.format("LOC stats cache: %d hits, %d misses", locStatsCache.getHits(), locStatsCache.getMisses());
         logger.info(log);
+        try {
+            locStatsCache.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot write the LOC stats cache", e);
+        }
     }
 
-
-    private static String[] buildDatasetHeader(){
-        return new String[]{
-                "Release",
-                "Filename",
-                "Size",
-                "LOC_touched",
-                "LOC_added",
-                "MAX_LOC_added",
-                "AVG_LOC_added",
-                "NR",
-                "NAuth",
-                "Churn",
-                "MAX_Churn",
-                "AVG_Churn",
-                "NFix",
-                "Age",
-                "WeightedAge",
-                "Buggy"};
+    /**
+     * Sets the timeouts of the HTTP transport used for the Jira REST calls, if present in the configuration
+     * ("connectTimeoutSeconds", "requestTimeoutSeconds", "readTimeoutSeconds").
+     */
+    private static void configureHttpTransport(JSONObject config) {
+        Number connectTimeout = (Number) config.get("connectTimeoutSeconds");
+        Number requestTimeout = (Number) config.get("requestTimeoutSeconds");
+        Number readTimeout = (Number) config.get("readTimeoutSeconds");
+        if (connectTimeout != null || requestTimeout != null || readTimeout != null) {
+            HttpTransport.configure(
+                    connectTimeout != null ? Duration.ofSeconds(connectTimeout.longValue()) : HttpTransport.DEFAULT_CONNECT_TIMEOUT,
+                    requestTimeout != null ? Duration.ofSeconds(requestTimeout.longValue()) : HttpTransport.DEFAULT_REQUEST_TIMEOUT,
+                    readTimeout != null ? Duration.ofSeconds(readTimeout.longValue()) : HttpTransport.DEFAULT_READ_TIMEOUT);
+        }
     }
 
-
-    private static String[] buildClassifiersHeader(){
-        return new String[]{
-                "Dataset",
-                "#TrainingRelease",
-                "%Training",
-                "%DefectiveInTraining",
-                "%DefectiveInTesting",
-                "Classifier",
-                "Balancing",
-                "FeatureSelection",
-                "Sensitivity",
-                "TP",
-                "FP",
-                "TN",
-                "FN",
-                "Precision",
-                "Recall",
-                "AUC",
-                "Kappa"
-        };
-    }
 }
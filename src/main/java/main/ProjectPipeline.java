@@ -0,0 +1,428 @@
+package main;
+
+import controller.*;
+import csv.CSVManager;
+import git.ChronologicalLog;
+import git.CommitTable;
+import git.GitAnalyzer;
+import git.GitCommitFactory;
+import jira.RetrieveTicketsID;
+import json.HttpTransport;
+import model.Bug;
+import model.DatasetInstance;
+import model.GitCommit;
+import model.JiraTicket;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevWalk;
+import weka.ClassifierEvaluation;
+import weka.CostSensitivity;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.ToIntFunction;
+import java.util.logging.Logger;
+
+/**
+ * The whole analysis of a single project: Jira releases and tickets, Git history,
+ * dataset creation and evaluation of classifiers with Weka.
+ * All the output files are prefixed by the name of the project.
+ */
+public class ProjectPipeline {
+
+    private static final String TICKET_STORE_PATH = "_tickets.bin";
+    private static final String CHECKPOINT_PATH = "_dataset_checkpoints";
+    private static final String COMMIT_TABLE_PATH = "_commits.bin";
+
+    private final String projectName;
+    private final Git git;
+    private final Logger logger;
+    // execution time of each stage, in the order in which stages complete
+    private final Map<String, Long> stageTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * @param projectName the Jira key of the project (e.g. BOOKKEEPER)
+     * @param git         the Git repository of the project
+     * @param logger      the logger
+     */
+    public ProjectPipeline(String projectName, Git git, Logger logger) {
+        this.projectName = projectName;
+        this.git = git;
+        this.logger = logger;
+    }
+
+    private List<GitCommit> retrieveCommitsWithJiraTickets(List<JiraTicket> tickets, List<ObjectId> gitLog,
+                                                           CommitTable commitTable) throws IOException {
+        List<GitCommit> commits = new ArrayList<>();
+        Set<ObjectId> revCommits = new HashSet<>();
+
+        // tickets may belong to more than one Jira project, so all the project keys are searched at once
+        Set<String> projectKeys = new HashSet<>();
+        for (JiraTicket ticket : tickets) {
+            projectKeys.add(GitAnalyzer.getProjectKey(ticket.getKey()));
+        }
+
+        // index the already retrieved log of commits by the ticket keys found in their messages, recorded in the commit table
+        Map<String, List<ObjectId>> commitsByTicket = new GitAnalyzer().getCommitsByTicketKey(gitLog, commitTable, projectKeys);
+
+        GitCommitFactory factory = GitCommitFactory.getInstance();
+        try (RevWalk walk = new RevWalk(git.getRepository())) {
+            for (JiraTicket ticket : tickets) {
+                List<ObjectId> results = commitsByTicket.getOrDefault(ticket.getKey(), Collections.emptyList());
+                for (ObjectId commit : results) {
+                    if (revCommits.add(commit)) {
+                        // avoid duplicates (commits that refer more than 1 Jira ticket)
+                        // it's maintained only the reference to a single Jira ticket for simplicity
+                        // only the commits of the log that fix bugs are parsed
+                        commits.add(factory.parseCommit(walk.parseCommit(commit), ticket.getKey()));
+                    }
+                }
+            }
+        }
+        commits.sort((a, b) -> {
+            int aCommitTime = a.getRevCommit().getCommitTime();
+            int bCommitTime = b.getRevCommit().getCommitTime();
+            if (aCommitTime > bCommitTime)
+                return 1;
+            else if (aCommitTime == bCommitTime)
+                return 0;
+            return -1;
+        });
+        return commits;
+    }
+
+    public void run() throws Exception {
+        String log;
+        stageTimes.clear();
+
+        /*
+         * The Jira phases (network) and the update of the commit table (local repository) do not depend on each other,
+         * so they run concurrently; the log is read from the table without date limits and cut at the latest release
+         * date as soon as releases are known. Ticket -> commit matching starts when both tickets and log are ready.
+         *
+         *   releases ---------------+--> log cut --+
+         *   git commit table -------+              +--> ticket-commit matching
+         *   tickets -------------------------------+
+         */
+        ExecutorService stages = Executors.newFixedThreadPool(3);
+        VersionManager versionManager;
+        List<JiraTicket> tickets;
+        List<GitCommit> fixCommits;
+        // the log is made of commit ids: their metadata is read from the table, and only the fix commits are parsed
+        List<ObjectId> allCommits;
+        ToIntFunction<AnyObjectId> commitTime;
+        try {
+            /*--------------------------------------------------------JIRA (RELEASES + TICKETS)-------------------------------------------------------*/
+
+            /*
+            The setReleases() method of the VersionManager class retrieves all the released version for the specified project,
+            store them sorted chronologically, both all versions and the first half of them.
+             */
+            logger.info("Retrieving project's releases from Jira ...");
+            CompletableFuture<VersionManager> releasesStage = stage("Jira releases", () -> {
+                VersionManager manager = new VersionManager(projectName, logger);
+                manager.setReleases();
+                return manager;
+            }, stages);
+
+            /*
+             * Now, let's interact with Jira again to retrieve tickets of all fixed bugs;
+             * only tickets updated since the previous run are downloaded and merged into the local store
+             * */
+            Path ticketStore = Path.of(projectName.toLowerCase(Locale.ROOT) + TICKET_STORE_PATH);
+            CompletableFuture<List<JiraTicket>> ticketsStage = stage("Jira tickets",
+                    () -> RetrieveTicketsID.syncTicketsID(projectName, ticketStore), stages);
+
+            /*---------------------------------------------------------------------GIT-------------------------------------------------------------*/
+
+            logger.info("\nRetrieving commits from Git ...");
+            // only the commits added since the previous run are walked and parsed, to extend the table
+            Path commitTablePath = Path.of(projectName.toLowerCase(Locale.ROOT) + COMMIT_TABLE_PATH);
+            CompletableFuture<CommitTable> commitTableStage = stage("Git commit table",
+                    () -> CommitTable.open(commitTablePath, git.getRepository()), stages);
+            // the latest release date bounds the log read from the table, that is sorted by commit time
+            CompletableFuture<List<ObjectId>> releasedLogStage = releasesStage.thenCombineAsync(commitTableStage,
+                    (manager, table) -> timed("Git log cut", () -> new ChronologicalLog(table, null,
+                            manager.getLatestReleaseDate())), stages);
+
+            /*
+             * Now, for each ticket, let see in which Git commit it is present
+             * */
+            CompletableFuture<List<GitCommit>> matchingStage = ticketsStage.thenCombineAsync(releasedLogStage,
+                    (ticketList, gitLog) -> timed("Ticket-commit matching", () -> retrieveCommitsWithJiraTickets(ticketList,
+                            gitLog, commitTableStage.join())), stages);
+
+            versionManager = await(releasesStage);
+            tickets = await(ticketsStage);
+            allCommits = await(releasedLogStage);
+            fixCommits = await(matchingStage);
+            commitTime = GitAnalyzer.commitTimeIn(await(commitTableStage));
+        } finally {
+            stages.shutdownNow();
+        }
+
+        Date maxDate = versionManager.getLatestReleaseDate();
+        log = String.format("Retrieved releases: %d\tLatest release date: %s", versionManager.getReleasesSize(), maxDate.toString());
+        logger.info(log);
+        log = String.format("Jira tickets: %d", tickets.size());
+        logger.info(log);
+        logger.info(HttpTransport.getInstance().getMetrics().toString());
+        log = String.format("Total commits: %d", allCommits.size());
+        logger.info(log);
+        log = String.format("Fix commits: %d", fixCommits.size());
+        logger.info(log);
+
+        /*---------------------------------------------------------------------BUGS----------------------------------------------------------*/
+
+        // Let's create a list of bugs objects from the jira tickets and then refine them with consistency checks
+        List<Bug> bugs = new ArrayList<>();
+        for (JiraTicket ticket : tickets) {
+            bugs.add(new Bug(ticket));
+        }
+
+        long start = System.nanoTime();
+        refineBugsList(bugs, fixCommits);
+
+        bugs = versionManager.calculateVersionsForBugs(bugs);
+        logger.info("\nIdentification of FV, OV, AVs and IV for bugs. DONE");
+
+        Map<String, List<ObjectId>> commitPerRelease = versionManager.splitCommitsPerRelease(allCommits, commitTime);
+        logger.info("\nSplit commits by releases. DONE");
+        recordStage("Bugs and releases", start);
+
+        /*-----------------------------------------------DATASET CREATION------------------------------------------------------*/
+
+        GitManager gitManager = new GitManager(git);
+        DatasetCreator datasetCreator = new DatasetCreator(versionManager, gitManager, bugs, logger);
+        // an interrupted construction restarts from the last completed release, and a new run only processes the new history
+        datasetCreator.setCheckpointDirectory(Path.of(projectName.toLowerCase(Locale.ROOT) + CHECKPOINT_PATH));
+
+        logger.info("\nDataset creation begins ...\n");
+        start = System.nanoTime();
+        List<DatasetInstance> dataset = datasetCreator.computeDataset(commitPerRelease);
+        recordStage("Dataset creation", start);
+        Map<String, List<DatasetInstance>> datasetsWithSnoring = datasetCreator.getMultipleDatasets();
+        logger.info("\nDataset creation. DONE");
+
+        // remove duplicated instances from both dataset and datasetWithSnoring
+        removeDatasetDuplicates(dataset, datasetsWithSnoring, logger);
+
+        // Building the CSV file
+        List<String[]> arrayOfCSVEntry = new ArrayList<>();
+        // add headings
+        String[] csvHeader = buildDatasetHeader();
+
+        arrayOfCSVEntry.add(csvHeader);
+
+        for (DatasetInstance entry : dataset) {
+            arrayOfCSVEntry.add(entry.toStringArray());
+        }
+
+        CSVManager.csvWriteAll(projectName.toLowerCase(Locale.ROOT) + "_dataset.csv", arrayOfCSVEntry);
+
+
+        /*--------------------------------------------------------------WEKA-----------------------------------------------------------*/
+
+        // throw away the first 2 columns (release and filename)
+        String[] wekaHeader = Arrays.copyOfRange(csvHeader, 2, csvHeader.length);
+
+        start = System.nanoTime();
+        WekaController wekaController = new WekaController(projectName, datasetsWithSnoring, wekaHeader);
+        logger.info("Walk Forward technique to evaluate classifiers is running ...");
+
+        // Do the comparison of results changing the cost sensitivity technique
+        for (CostSensitivity sensitivity : CostSensitivity.values()) {
+            log = "Classifiers evaluation with cost sensitivity policy: " + sensitivity.toString();
+            logger.info(log);
+            List<ClassifierEvaluation> evaluations = wekaController.walkForwardWithSnoring(sensitivity);
+            List<String[]> evaluationsToCsv = new ArrayList<>();
+            String[] header = buildClassifiersHeader();
+            evaluationsToCsv.add(header);
+            for (ClassifierEvaluation ce : evaluations) {
+                evaluationsToCsv.add(ce.toStringArray(projectName));
+            }
+            StringBuilder builder = new StringBuilder();
+            builder.append(projectName).append("_").append(sensitivity.toString()).append(".csv");
+            CSVManager.csvWriteAll(builder.toString(), evaluationsToCsv);
+        }
+        recordStage("Weka evaluation", start);
+
+        logStageTimes();
+    }
+
+    /* -------------------------------------------------------------------------- STAGES ----------------------------------------------------------------*/
+
+    @FunctionalInterface
+    private interface Stage<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * Starts a stage asynchronously, recording its execution time.
+     */
+    private <T> CompletableFuture<T> stage(String name, Stage<T> stage, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> timed(name, stage), executor);
+    }
+
+    /**
+     * Runs a stage in the calling thread, recording its execution time.
+     * Checked exceptions are wrapped, so that stages can be composed with CompletableFuture.
+     */
+    private <T> T timed(String name, Stage<T> stage) {
+        long start = System.nanoTime();
+        try {
+            return stage.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            recordStage(name, start);
+        }
+    }
+
+    private void recordStage(String name, long startNanos) {
+        stageTimes.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Waits for the completion of a stage, rethrowing the exception that made it fail.
+     */
+    private static <T> T await(CompletableFuture<T> stage) throws Exception {
+        try {
+            return stage.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            if (cause instanceof Exception exception)
+                throw exception;
+            throw e;
+        }
+    }
+
+    private void logStageTimes() {
+        logger.info(System.getProperty("line.separator"));
+        StringBuilder builder = new StringBuilder("Stage times:");
+        synchronized (stageTimes) {
+            for (Map.Entry<String, Long> stage : stageTimes.entrySet()) {
+                builder.append(System.getProperty("line.separator")).append(String.format("%-25s %8d ms", stage.getKey(), stage.getValue()));
+            }
+        }
+        logger.info(builder.toString());
+    }
+
+    private void refineBugsList(List<Bug> bugs, List<GitCommit> fixCommits){
+        // let's process bugs with commits to define fix commit and other commits for the specific bug
+        BugManager.setFixCommitAndOtherCommits(bugs, fixCommits);
+
+        /** now, remove bugs with no bounded commit and add metadata on which is its fixing commit
+         * That can be chosen in 2 ways:
+         *  - if Jira fix date corresponds to commit date, then that commit is the fix commit
+         *  - otherwise, the latest commit referring that bug is chosen as FixCommit
+         *
+         * Bugs with no such commits are removed from the list.
+         */
+
+        BugManager.patchFixCommit(bugs);
+
+        // sort bugs by time to avoid influence of future bugs on data of the past
+        // this allows to build training datasets Snoring-affected to be used in Walking Forward approach to validate the predictor
+        BugManager.sortBugsChronologically(bugs);
+    }
+
+
+    private void removeDatasetDuplicates(List<DatasetInstance> dataset, Map<String,List<DatasetInstance>> datasetWithSnoring, Logger logger){
+        int numBuggy = 0;
+        int numDuplicates = 0;
+
+        HashMap<String, List<DatasetInstance>> datasetByRelease = new HashMap<>();
+        for (DatasetInstance instance : dataset) {
+            if (!datasetByRelease.containsKey(instance.getVersion())) {
+                datasetByRelease.put(instance.getVersion(), new ArrayList<>());
+            }
+            datasetByRelease.get(instance.getVersion()).add(instance);
+        }
+
+        List<DatasetInstance> toRemove = new ArrayList<>();
+        for (Map.Entry<String, List<DatasetInstance>> release : datasetByRelease.entrySet()) {
+            List<String> filenames = new ArrayList<>();
+
+            for (DatasetInstance instance : release.getValue()) {
+                if (instance.isBuggy()) {
+                    numBuggy++;
+                }
+
+                if (filenames.contains(instance.getFilename())) {
+                    numDuplicates++;
+                    toRemove.add(instance);
+                } else {
+                    filenames.add(instance.getFilename());
+                }
+            }
+        }
+
+        dataset.removeAll(toRemove);
+
+        for (DatasetInstance i : toRemove){
+            datasetWithSnoring.get(i.getVersion()).remove(i);
+        }
+
+        logger.info(System.getProperty("line.separator"));
+        String log = String.format("Dataset size: %d instances", dataset.size());
+        logger.info(log);
+        log = String.format("Buggy instances: %d", numBuggy);
+        logger.info(log);
+        log = String.format("Buggy percentage: %f %%", ((float) numBuggy / dataset.size()) * 100.0);
+        logger.info(log);
+        log = String.format("Number of duplicated instances: %d", numDuplicates);
+        logger.info(log);
+    }
+
+
+    private static String[] buildDatasetHeader(){
+        return new String[]{
+                "Release",
+                "Filename",
+                "Size",
+                "LOC_touched",
+                "LOC_added",
+                "MAX_LOC_added",
+                "AVG_LOC_added",
+                "NR",
+                "NAuth",
+                "Churn",
+                "MAX_Churn",
+                "AVG_Churn",
+                "NFix",
+                "Age",
+                "WeightedAge",
+                "Buggy"};
+    }
+
+
+    private static String[] buildClassifiersHeader(){
+        return new String[]{
+                "Dataset",
+                "#TrainingRelease",
+                "%Training",
+                "%DefectiveInTraining",
+                "%DefectiveInTesting",
+                "Classifier",
+                "Balancing",
+                "FeatureSelection",
+                "Sensitivity",
+                "TP",
+                "FP",
+                "TN",
+                "FN",
+                "Precision",
+                "Recall",
+                "AUC",
+                "Kappa"
+        };
+    }
+}
@@ -1,306 +1,263 @@
 package model;
 
 import java.time.LocalDate;
-import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * View over a row of a {@link FeatureTable}: an instance of the dataset is a file in a specific release.
+ * Instances are created through the table, with {@link FeatureTable#addRow} and {@link FeatureTable#carryOver};
+ * instances read from a {@link FeatureTable#snapshot} are read-only.
+ */
 public class DatasetInstance {
-    private String version;
-    private String filename;
-    private boolean buggy;
-
-    private LocalDate creationDate;
-    private Set<String> previousNames;
-
-    // features
-    private int size;                           // LOC
-    private int locTouched;                     // LOC touched (added + deleted + modified)
-    private int numberOfRevisions;              // number of commits
-    private Set<String> authors;                // set of authors that worked on the file
-    private int locAdded;                       // number of LOC added over revisions
-    private int maxLocAdded;                    // maximum number of loc added in a revision
-    private float avgLocAdded;                  // average number of loc added over revisions
-    private int churn;                          // sum of (added - deleted) LOC over revisions
-    private int maxChurn;                       // maximum number of churn in a revision
-    private float avgChurn;                     // average number of churn over revisions
-    private Set<String> fixedBugs;              // set of fixed bugs, used to calculate the number of fixed bugs
-    private int age;                            // age of the file in weeks
-
-    private int historicalLocTouched;           // number of LOC touched in the history of the file, used to compute the Weighted Age
-    private int historicalNumberOfRevisions;    // number of total commits that touched the file from its existence
-
-
-    public DatasetInstance(String version, String filename, LocalDate creationDate, boolean buggy) {
-        this.version = version;
-        this.filename = filename;
-        this.authors = new HashSet<>();
-        this.creationDate = creationDate;
-        this.previousNames = new HashSet<>();
-        this.historicalLocTouched = 0;
-        this.historicalNumberOfRevisions = 0;
-
-        // features
-        this.size = 0;
-        this.locTouched = 0;
-        this.locAdded = 0;
-        this.maxLocAdded = 0;
-        this.avgLocAdded = 0f;
-        this.numberOfRevisions = 0;
-        this.churn = 0;
-        this.maxChurn = 0;
-        this.avgChurn = 0f;
-        this.age = 0;
-        this.fixedBugs = new HashSet<>();
-        this.buggy = buggy;
+    private final FeatureTable table;
+    private final int row;
+    private final boolean readOnly;
+
+    DatasetInstance(FeatureTable table, int row, boolean readOnly) {
+        this.table = table;
+        this.row = row;
+        this.readOnly = readOnly;
     }
 
-    /**
-     * This constructor is used to clone an instance for backup purposes
-     * @param instance the instance to be cloned
-     */
-    public DatasetInstance(DatasetInstance instance){
-        this.version = instance.getVersion();
-
-        this.filename = instance.getFilename();
-        this.creationDate = instance.getCreationDate();
-        this.authors = instance.getAuthors();
-        this.previousNames = instance.getPreviousNames();
-        this.historicalLocTouched = instance.getHistoricalLocTouched();
-        this.historicalNumberOfRevisions = instance.getHistoricalNumberOfRevisions();
-
-        // features
-        this.size = instance.getSize();
-        this.locTouched = instance.getLocTouched();
-        this.locAdded = instance.getLocAdded();
-        this.maxLocAdded = instance.getMaxLocAdded();
-        this.avgLocAdded = instance.getAvgLocAdded();
-        this.numberOfRevisions = instance.getNumberOfRevisions();
-        this.churn = instance.getChurn();
-        this.maxChurn = instance.getMaxChurn();
-        this.avgChurn = instance.getAvgChurn();
-        this.age = instance.getAge();
-        this.fixedBugs = instance.getFixedBugs();
-        this.buggy = instance.isBuggy();
-    }
-
-    public DatasetInstance(DatasetInstance old, String newRelease) {
-        // this is the only change
-        this.version = newRelease;
-
-        this.filename = old.getFilename();
-        this.creationDate = old.getCreationDate();
-        this.authors = old.getAuthors();
-        this.previousNames = old.getPreviousNames();
-        this.historicalLocTouched = old.getHistoricalLocTouched();
-        this.historicalNumberOfRevisions = old.getHistoricalNumberOfRevisions();
-
-        // features
-        this.size = old.getSize();
-        this.locTouched = 0;
-        this.locAdded = 0;
-        this.maxLocAdded = old.getMaxLocAdded();
-        this.avgLocAdded = old.getAvgLocAdded();
-        this.numberOfRevisions = 0;
-        this.churn = 0;
-        this.maxChurn = old.getMaxChurn();
-        this.avgChurn = old.getAvgChurn();
-        this.age = old.getAge();
-        this.fixedBugs = old.getFixedBugs();
-        this.buggy = false;
+    private void beforeWrite() {
+        if (readOnly)
+            throw new UnsupportedOperationException("Instances of a snapshot are read-only");
+        table.beforeWrite(row);
+    }
+
+    FeatureTable getTable() {
+        return table;
+    }
+
+    int getRow() {
+        return row;
     }
 
     public String getVersion() {
-        return version;
+        return table.versions.get(table.version[row]);
     }
 
     public void setVersion(String version) {
-        this.version = version;
+        beforeWrite();
+        table.version[row] = table.versions.intern(version);
     }
 
     public String getFilename() {
-        return filename;
+        return table.paths.get(table.filename[row]);
     }
 
     public void setFilename(String filename) {
-        this.filename = filename;
+        beforeWrite();
+        table.filename[row] = table.paths.intern(filename);
     }
 
     public boolean isBuggy() {
-        return buggy;
+        return table.buggy[row];
     }
 
     public void setBuggy(boolean buggy) {
-        this.buggy = buggy;
+        beforeWrite();
+        table.buggy[row] = buggy;
     }
 
     public LocalDate getCreationDate() {
-        return creationDate;
+        return LocalDate.ofEpochDay(table.creationDay[row]);
     }
 
     public void setCreationDate(LocalDate creationDate) {
-        this.creationDate = creationDate;
+        beforeWrite();
+        table.creationDay[row] = (int) creationDate.toEpochDay();
     }
 
+    /**
+     * @return a read-only copy of the previous names of the file
+     */
     public Set<String> getPreviousNames() {
-        return previousNames;
+        return FeatureTable.decode(table.paths, table.previousNames[row]);
     }
 
     public void setPreviousNames(Set<String> previousNames) {
-        this.previousNames = previousNames;
+        beforeWrite();
+        table.previousNames[row] = FeatureTable.encode(table.paths, previousNames);
     }
 
     public int getSize() {
-        return size;
+        return table.size[row];
     }
 
     public void setSize(int size) {
-        this.size = size;
+        beforeWrite();
+        table.size[row] = size;
     }
 
     public int getLocTouched() {
-        return locTouched;
+        return table.locTouched[row];
     }
 
     public void setLocTouched(int locTouched) {
-        this.locTouched = locTouched;
+        beforeWrite();
+        table.locTouched[row] = locTouched;
     }
 
     public int getNumberOfRevisions() {
-        return numberOfRevisions;
+        return table.numberOfRevisions[row];
     }
 
     public void setNumberOfRevisions(int numberOfRevisions) {
-        this.numberOfRevisions = numberOfRevisions;
+        beforeWrite();
+        table.numberOfRevisions[row] = numberOfRevisions;
     }
 
+    /**
+     * @return a read-only copy of the set of authors that worked on the file
+     */
     public Set<String> getAuthors() {
-        return authors;
+        return FeatureTable.decode(table.authorNames, table.authors[row]);
     }
 
     public void setAuthors(Set<String> authors) {
-        this.authors = authors;
+        beforeWrite();
+        table.authors[row] = FeatureTable.encode(table.authorNames, authors);
     }
 
     public void addAuthor(String author) {
-        this.authors.add(author);
+        beforeWrite();
+        table.authors[row].set(table.authorNames.intern(author));
     }
 
     public int getLocAdded() {
-        return locAdded;
+        return table.locAdded[row];
     }
 
     public void setLocAdded(int locAdded) {
-        this.locAdded = locAdded;
+        beforeWrite();
+        table.locAdded[row] = locAdded;
     }
 
     public int getMaxLocAdded() {
-        return maxLocAdded;
+        return table.maxLocAdded[row];
     }
 
     public void setMaxLocAdded(int maxLocAdded) {
-        this.maxLocAdded = maxLocAdded;
+        beforeWrite();
+        table.maxLocAdded[row] = maxLocAdded;
     }
 
     public float getAvgLocAdded() {
-        return avgLocAdded;
+        return table.avgLocAdded[row];
     }
 
     public void setAvgLocAdded(float avgLocAdded) {
-        this.avgLocAdded = avgLocAdded;
+        beforeWrite();
+        table.avgLocAdded[row] = avgLocAdded;
     }
 
     public int getChurn() {
-        return churn;
+        return table.churn[row];
     }
 
     public void setChurn(int churn) {
-        this.churn = churn;
+        beforeWrite();
+        table.churn[row] = churn;
     }
 
     public int getMaxChurn() {
-        return maxChurn;
+        return table.maxChurn[row];
     }
 
     public void setMaxChurn(int maxChurn) {
-        this.maxChurn = maxChurn;
+        beforeWrite();
+        table.maxChurn[row] = maxChurn;
     }
 
     public float getAvgChurn() {
-        return avgChurn;
+        return table.avgChurn[row];
     }
 
     public void setAvgChurn(float avgChurn) {
-        this.avgChurn = avgChurn;
+        beforeWrite();
+        table.avgChurn[row] = avgChurn;
     }
 
+    /**
+     * @return a read-only copy of the set of bugs fixed on the file
+     */
     public Set<String> getFixedBugs() {
-        return fixedBugs;
+        return FeatureTable.decode(table.bugTickets, table.fixedBugs[row]);
     }
 
     public void setFixedBugs(Set<String> fixedBugs) {
-        this.fixedBugs = fixedBugs;
+        beforeWrite();
+        table.fixedBugs[row] = FeatureTable.encode(table.bugTickets, fixedBugs);
     }
 
     public int getAge() {
-        return age;
+        return table.age[row];
     }
 
     public void setAge(int age) {
-        this.age = age;
+        beforeWrite();
+        table.age[row] = age;
     }
 
-    public int getHistoricalLocTouched(){ return historicalLocTouched;}
+    public int getHistoricalLocTouched(){ return table.historicalLocTouched[row];}
 
-    public void setHistoricalLocTouched(int historicalLocTouched){ this.historicalLocTouched = historicalLocTouched;}
+    public void setHistoricalLocTouched(int historicalLocTouched){ beforeWrite(); table.historicalLocTouched[row] = historicalLocTouched;}
 
-    public int getHistoricalNumberOfRevisions(){ return historicalNumberOfRevisions;}
+    public int getHistoricalNumberOfRevisions(){ return table.historicalNumberOfRevisions[row];}
 
-    public void setHistoricalNumberOfRevisions(int historicalNumberOfRevisions){this.historicalNumberOfRevisions = historicalNumberOfRevisions;}
+    public void setHistoricalNumberOfRevisions(int historicalNumberOfRevisions){ beforeWrite(); table.historicalNumberOfRevisions[row] = historicalNumberOfRevisions;}
 
     public void addPreviousName(String oldPath) {
-        this.previousNames.add(oldPath);
+        beforeWrite();
+        table.previousNames[row].set(table.paths.intern(oldPath));
     }
 
     public void addChurn(int churn) {
-        this.churn += churn;
-        this.maxChurn = Math.max(this.maxChurn, churn);
-        this.avgChurn = (float) this.churn / this.historicalNumberOfRevisions;
+        beforeWrite();
+        table.churn[row] += churn;
+        table.maxChurn[row] = Math.max(table.maxChurn[row], churn);
+        table.avgChurn[row] = (float) table.churn[row] / table.historicalNumberOfRevisions[row];
     }
 
     public void incrementNumberOfRevisions() {
-        this.numberOfRevisions++;
-        this.historicalNumberOfRevisions++;
+        beforeWrite();
+        table.numberOfRevisions[row]++;
+        table.historicalNumberOfRevisions[row]++;
     }
 
     public void addLocTouched(int locTouched) {
-        this.locTouched += locTouched;
-        this.historicalLocTouched += locTouched;
+        beforeWrite();
+        table.locTouched[row] += locTouched;
+        table.historicalLocTouched[row] += locTouched;
     }
 
     public void addLocAdded(int locAdded) {
-        this.locAdded += locAdded;
-        this.maxLocAdded = Math.max(this.maxLocAdded, locAdded);
-        this.avgLocAdded = (float) this.locAdded / this.historicalNumberOfRevisions;
+        beforeWrite();
+        table.locAdded[row] += locAdded;
+        table.maxLocAdded[row] = Math.max(table.maxLocAdded[row], locAdded);
+        table.avgLocAdded[row] = (float) table.locAdded[row] / table.historicalNumberOfRevisions[row];
     }
 
     public void addFixedBug(String bugTicket){
-        this.fixedBugs.add(bugTicket);
+        beforeWrite();
+        table.fixedBugs[row].set(table.bugTickets.intern(bugTicket));
     }
 
     public float getWeightedAge(){
-        return (float)this.age/this.historicalLocTouched;
+        return (float) getAge() / getHistoricalLocTouched();
     }
 
     public int getNumberOfAuthors(){
-        return this.authors.size();
+        return table.authors[row].cardinality();
     }
 
     public int getNumberOfFixedBugs(){
-        return this.fixedBugs.size();
+        return table.fixedBugs[row].cardinality();
     }
 
     public String isBuggyYesOrNot(){
-        if (this.buggy)
+        if (isBuggy())
             return "yes";
         else
             return  "no";
@@ -331,20 +288,20 @@ public class DatasetInstance {
     public String[] toStringArray() {
 
         return new String[]{
-                this.version,
-                this.filename,
-                Integer.toString(this.size),
-                Integer.toString(this.locTouched),
-                Integer.toString(this.locAdded),
-                Integer.toString(this.maxLocAdded),
-                String.format("%.4f", this.avgLocAdded),
-                Integer.toString(this.numberOfRevisions),
+                this.getVersion(),
+                this.getFilename(),
+                Integer.toString(this.getSize()),
+                Integer.toString(this.getLocTouched()),
+                Integer.toString(this.getLocAdded()),
+                Integer.toString(this.getMaxLocAdded()),
+                String.format("%.4f", this.getAvgLocAdded()),
+                Integer.toString(this.getNumberOfRevisions()),
                 Integer.toString(this.getNumberOfAuthors()),
-                Integer.toString(this.churn),
-                Integer.toString(this.maxChurn),
-                String.format("%.4f", this.avgChurn),
+                Integer.toString(this.getChurn()),
+                Integer.toString(this.getMaxChurn()),
+                String.format("%.4f", this.getAvgChurn()),
                 Integer.toString(this.getNumberOfFixedBugs()),
-                Integer.toString(this.age),
+                Integer.toString(this.getAge()),
                 String.format("%.4f", this.getWeightedAge()),
                 this.isBuggyYesOrNot()
         };
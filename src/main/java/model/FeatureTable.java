@@ -0,0 +1,491 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Column-oriented storage of the dataset: every feature is kept in a primitive array indexed by row,
+ * paths, versions, authors and bug tickets are dictionary-encoded and the sets of each row
+ * (authors, fixed bugs, previous names) are bit sets over the ids of the corresponding dictionary.
+ * Rows are accessed through {@link DatasetInstance} views, that are the only way to create and change them.
+ * <p>
+ * Snapshots of the dataset are copy-on-write: taking a snapshot only starts a new epoch, and the first write
+ * to a row in an epoch first freezes a copy of the row in the history of the row, tagged with that epoch.
+ * A snapshot reads each row from the first frozen copy tagged after its own epoch, or from the live row
+ * if the row has not been changed since then, so it costs only the rows changed after it was taken.
+ * <p>
+ * A table is not thread-safe: each dataset under construction owns its own table.
+ * It can be saved with {@link #writeTo(DataOutput)} and restored with {@link #readFrom(DataInput)},
+ * together with the snapshots already taken.
+ */
+public final class FeatureTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // epoch of the frozen copies, that are never changed again
+    private static final int FROZEN = Integer.MAX_VALUE;
+
+    /**
+     * Bidirectional mapping between strings and dense int ids.
+     */
+    static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(values.size());
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        }
+
+        void readFrom(DataInput in) throws IOException {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                intern(in.readUTF());
+            }
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    final Dictionary paths = new Dictionary();
+    final Dictionary versions = new Dictionary();
+    final Dictionary authorNames = new Dictionary();
+    final Dictionary bugTickets = new Dictionary();
+
+    /**
+     * Frozen copies of a row, with the epochs in which they have been taken (in ascending order).
+     */
+    private static final class RowHistory {
+        private int[] epochs = new int[2];
+        private int[] copies = new int[2];
+        private int length = 0;
+
+        void add(int epoch, int copy) {
+            if (length == epochs.length) {
+                epochs = Arrays.copyOf(epochs, length * 2);
+                copies = Arrays.copyOf(copies, length * 2);
+            }
+            epochs[length] = epoch;
+            copies[length] = copy;
+            length++;
+        }
+
+        /**
+         * @return the first copy taken after the given epoch, or -1 if the row has not been changed since then
+         */
+        int copyAfter(int epoch) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (epochs[mid] <= epoch)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low < length ? copies[low] : -1;
+        }
+    }
+
+    private int rows = 0;
+    private int epoch = 0;
+    private final Map<Integer, RowHistory> histories = new HashMap<>();
+    // rows of the dataset at the time of the snapshots; each snapshot is a prefix of this log
+    private int[] snapshotLog = new int[INITIAL_CAPACITY];
+    private int snapshotLogLength = 0;
+    // number of rows of each snapshot, indexed by the epoch of the snapshot
+    private int[] snapshotLengths = new int[8];
+
+    // epoch in which the row has been created or last frozen
+    int[] stamp;
+
+    int[] version;
+    int[] filename;
+    int[] creationDay;
+    boolean[] buggy;
+
+    int[] size;
+    int[] locTouched;
+    int[] numberOfRevisions;
+    int[] locAdded;
+    int[] maxLocAdded;
+    float[] avgLocAdded;
+    int[] churn;
+    int[] maxChurn;
+    float[] avgChurn;
+    int[] age;
+    int[] historicalLocTouched;
+    int[] historicalNumberOfRevisions;
+
+    BitSet[] authors;
+    BitSet[] fixedBugs;
+    BitSet[] previousNames;
+
+    public FeatureTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the number of rows ever added to the table
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Adds a new row for a file that appears for the first time, with all the features set to zero.
+     *
+     * @return the view of the new row
+     */
+    public DatasetInstance addRow(String version, String filename, LocalDate creationDate, boolean buggy) {
+        int row = nextRow();
+        this.version[row] = versions.intern(version);
+        this.filename[row] = paths.intern(filename);
+        this.creationDay[row] = (int) creationDate.toEpochDay();
+        this.buggy[row] = buggy;
+        this.authors[row] = new BitSet();
+        this.fixedBugs[row] = new BitSet();
+        this.previousNames[row] = new BitSet();
+        return new DatasetInstance(this, row, false);
+    }
+
+    /**
+     * Carries a row over to the next release: per-release features restart from zero and the file is not buggy,
+     * while the historical features are kept.
+     *
+     * @return the view of the row of the next release
+     */
+    public DatasetInstance carryOver(DatasetInstance instance, String newRelease) {
+        DatasetInstance next = copy(instance);
+        version[next.getRow()] = versions.intern(newRelease);
+        return next;
+    }
+
+    /**
+     * Takes a read-only snapshot of the dataset, isolated from any later change to its rows.
+     * Since instances of past releases are never removed from the dataset, the rows of the previous
+     * snapshot must still be a prefix of it.
+     *
+     * @param dataset the current state of the dataset, made of rows of this table
+     * @return a view of the dataset as it is now
+     */
+    public List<DatasetInstance> snapshot(List<DatasetInstance> dataset) {
+        if (dataset.size() < snapshotLogLength || (snapshotLogLength > 0
+                && dataset.get(snapshotLogLength - 1).getRow() != snapshotLog[snapshotLogLength - 1]))
+            throw new IllegalStateException("The rows of the previous snapshot are no longer a prefix of the dataset");
+        if (dataset.size() > snapshotLog.length)
+            snapshotLog = Arrays.copyOf(snapshotLog, Math.max(dataset.size(), snapshotLog.length + (snapshotLog.length >> 1)));
+        for (int i = snapshotLogLength; i < dataset.size(); i++) {
+            DatasetInstance instance = dataset.get(i);
+            if (instance.getTable() != this)
+                throw new IllegalArgumentException("The dataset contains rows of another table");
+            snapshotLog[i] = instance.getRow();
+        }
+        snapshotLogLength = dataset.size();
+        if (epoch == snapshotLengths.length)
+            snapshotLengths = Arrays.copyOf(snapshotLengths, epoch * 2);
+        snapshotLengths[epoch] = snapshotLogLength;
+        // rows changed from now on are frozen before the change
+        return new Snapshot(epoch++, snapshotLogLength);
+    }
+
+    /**
+     * @return the number of snapshots taken so far
+     */
+    public int getSnapshotCount() {
+        return epoch;
+    }
+
+    /**
+     * @param index the position of the snapshot among the ones taken so far, in the order they have been taken
+     * @return the same view of the dataset returned by {@link #snapshot(List)} when it was taken
+     */
+    public List<DatasetInstance> getSnapshot(int index) {
+        Objects.checkIndex(index, epoch);
+        return new Snapshot(index, snapshotLengths[index]);
+    }
+
+    /**
+     * @return the row of an instance of this table, e.g. to save the order of the instances of a dataset
+     */
+    public int rowOf(DatasetInstance instance) {
+        if (instance.getTable() != this)
+            throw new IllegalArgumentException("The instance belongs to another table");
+        return instance.getRow();
+    }
+
+    /**
+     * @return a writable view of a row previously returned by {@link #rowOf(DatasetInstance)}
+     */
+    public DatasetInstance instanceAt(int row) {
+        Objects.checkIndex(row, rows);
+        if (stamp[row] == FROZEN)
+            throw new IllegalArgumentException("Row " + row + " is a frozen copy");
+        return new DatasetInstance(this, row, false);
+    }
+
+    /**
+     * Writes all the rows, the dictionaries and the snapshots of the table.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(rows);
+        out.writeInt(epoch);
+        paths.writeTo(out);
+        versions.writeTo(out);
+        authorNames.writeTo(out);
+        bugTickets.writeTo(out);
+        for (int[] column : new int[][]{stamp, version, filename, creationDay, size, locTouched, numberOfRevisions,
+                locAdded, maxLocAdded, churn, maxChurn, age, historicalLocTouched, historicalNumberOfRevisions}) {
+            writeInts(out, column, rows);
+        }
+        for (float[] column : new float[][]{avgLocAdded, avgChurn}) {
+            for (int row = 0; row < rows; row++) {
+                out.writeFloat(column[row]);
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            out.writeBoolean(buggy[row]);
+        }
+        for (BitSet[] column : new BitSet[][]{authors, fixedBugs, previousNames}) {
+            for (int row = 0; row < rows; row++) {
+                long[] words = column[row].toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        out.writeInt(histories.size());
+        for (Map.Entry<Integer, RowHistory> entry : histories.entrySet()) {
+            RowHistory history = entry.getValue();
+            out.writeInt(entry.getKey());
+            out.writeInt(history.length);
+            writeInts(out, history.epochs, history.length);
+            writeInts(out, history.copies, history.length);
+        }
+        out.writeInt(snapshotLogLength);
+        writeInts(out, snapshotLog, snapshotLogLength);
+        writeInts(out, snapshotLengths, epoch);
+    }
+
+    /**
+     * @return the table written by {@link #writeTo(DataOutput)}
+     */
+    public static FeatureTable readFrom(DataInput in) throws IOException {
+        FeatureTable table = new FeatureTable();
+        int rows = in.readInt();
+        int epoch = in.readInt();
+        if (rows < 0 || epoch < 0)
+            throw new IOException("Corrupted feature table");
+        table.allocate(Math.max(rows, INITIAL_CAPACITY));
+        table.rows = rows;
+        table.epoch = epoch;
+        table.paths.readFrom(in);
+        table.versions.readFrom(in);
+        table.authorNames.readFrom(in);
+        table.bugTickets.readFrom(in);
+        for (int[] column : new int[][]{table.stamp, table.version, table.filename, table.creationDay, table.size,
+                table.locTouched, table.numberOfRevisions, table.locAdded, table.maxLocAdded, table.churn,
+                table.maxChurn, table.age, table.historicalLocTouched, table.historicalNumberOfRevisions}) {
+            readInts(in, column, rows);
+        }
+        for (float[] column : new float[][]{table.avgLocAdded, table.avgChurn}) {
+            for (int row = 0; row < rows; row++) {
+                column[row] = in.readFloat();
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            table.buggy[row] = in.readBoolean();
+        }
+        for (BitSet[] column : new BitSet[][]{table.authors, table.fixedBugs, table.previousNames}) {
+            for (int row = 0; row < rows; row++) {
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                column[row] = BitSet.valueOf(words);
+            }
+        }
+        int historyCount = in.readInt();
+        for (int i = 0; i < historyCount; i++) {
+            int row = in.readInt();
+            RowHistory history = new RowHistory();
+            history.length = in.readInt();
+            history.epochs = new int[Math.max(history.length, 2)];
+            history.copies = new int[Math.max(history.length, 2)];
+            readInts(in, history.epochs, history.length);
+            readInts(in, history.copies, history.length);
+            table.histories.put(row, history);
+        }
+        table.snapshotLogLength = in.readInt();
+        table.snapshotLog = new int[Math.max(table.snapshotLogLength, INITIAL_CAPACITY)];
+        readInts(in, table.snapshotLog, table.snapshotLogLength);
+        table.snapshotLengths = new int[Math.max(epoch, 8)];
+        readInts(in, table.snapshotLengths, epoch);
+        return table;
+    }
+
+    private static void writeInts(DataOutput out, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static void readInts(DataInput in, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+    }
+
+    private final class Snapshot extends AbstractList<DatasetInstance> implements RandomAccess {
+        private final int snapshotEpoch;
+        private final int length;
+
+        private Snapshot(int snapshotEpoch, int length) {
+            this.snapshotEpoch = snapshotEpoch;
+            this.length = length;
+        }
+
+        @Override
+        public DatasetInstance get(int index) {
+            Objects.checkIndex(index, length);
+            int row = snapshotLog[index];
+            RowHistory history = histories.get(row);
+            int copy = history == null ? -1 : history.copyAfter(snapshotEpoch);
+            return new DatasetInstance(FeatureTable.this, copy < 0 ? row : copy, true);
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+    }
+
+    /**
+     * Called before each change of a row: if a snapshot has been taken since the row was created or last frozen,
+     * a copy of its current state is kept for the snapshots.
+     */
+    void beforeWrite(int row) {
+        if (stamp[row] >= epoch)
+            return;
+        int copy = copyOf(row, true);
+        stamp[copy] = FROZEN;
+        histories.computeIfAbsent(row, k -> new RowHistory()).add(epoch, copy);
+        stamp[row] = epoch;
+    }
+
+    private DatasetInstance copy(DatasetInstance instance) {
+        if (instance.getTable() != this)
+            throw new IllegalArgumentException("The instance belongs to another table");
+        return new DatasetInstance(this, copyOf(instance.getRow(), false), false);
+    }
+
+    /**
+     * @param from      the row to copy
+     * @param allFields true to copy also the per-release features and the buggy flag
+     * @return the new row
+     */
+    private int copyOf(int from, boolean allFields) {
+        int row = nextRow();
+        version[row] = version[from];
+        filename[row] = filename[from];
+        creationDay[row] = creationDay[from];
+        size[row] = size[from];
+        maxLocAdded[row] = maxLocAdded[from];
+        avgLocAdded[row] = avgLocAdded[from];
+        maxChurn[row] = maxChurn[from];
+        avgChurn[row] = avgChurn[from];
+        age[row] = age[from];
+        historicalLocTouched[row] = historicalLocTouched[from];
+        historicalNumberOfRevisions[row] = historicalNumberOfRevisions[from];
+        authors[row] = (BitSet) authors[from].clone();
+        fixedBugs[row] = (BitSet) fixedBugs[from].clone();
+        previousNames[row] = (BitSet) previousNames[from].clone();
+        if (allFields) {
+            buggy[row] = buggy[from];
+            locTouched[row] = locTouched[from];
+            numberOfRevisions[row] = numberOfRevisions[from];
+            locAdded[row] = locAdded[from];
+            churn[row] = churn[from];
+        }
+        return row;
+    }
+
+    static BitSet encode(Dictionary dictionary, Collection<String> values) {
+        BitSet bits = new BitSet();
+        for (String value : values) {
+            bits.set(dictionary.intern(value));
+        }
+        return bits;
+    }
+
+    static Set<String> decode(Dictionary dictionary, BitSet bits) {
+        Set<String> values = new LinkedHashSet<>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            values.add(dictionary.get(id));
+        }
+        return Collections.unmodifiableSet(values);
+    }
+
+    private int nextRow() {
+        if (rows == version.length)
+            allocate(rows + (rows >> 1));
+        stamp[rows] = epoch;
+        return rows++;
+    }
+
+    private void allocate(int capacity) {
+        stamp = grow(stamp, capacity);
+        version = grow(version, capacity);
+        filename = grow(filename, capacity);
+        creationDay = grow(creationDay, capacity);
+        buggy = buggy == null ? new boolean[capacity] : Arrays.copyOf(buggy, capacity);
+        size = grow(size, capacity);
+        locTouched = grow(locTouched, capacity);
+        numberOfRevisions = grow(numberOfRevisions, capacity);
+        locAdded = grow(locAdded, capacity);
+        maxLocAdded = grow(maxLocAdded, capacity);
+        avgLocAdded = grow(avgLocAdded, capacity);
+        churn = grow(churn, capacity);
+        maxChurn = grow(maxChurn, capacity);
+        avgChurn = grow(avgChurn, capacity);
+        age = grow(age, capacity);
+        historicalLocTouched = grow(historicalLocTouched, capacity);
+        historicalNumberOfRevisions = grow(historicalNumberOfRevisions, capacity);
+        authors = grow(authors, capacity);
+        fixedBugs = grow(fixedBugs, capacity);
+        previousNames = grow(previousNames, capacity);
+    }
+
+    private static int[] grow(int[] column, int capacity) {
+        return column == null ? new int[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private static float[] grow(float[] column, int capacity) {
+        return column == null ? new float[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private static BitSet[] grow(BitSet[] column, int capacity) {
+        return column == null ? new BitSet[capacity] : Arrays.copyOf(column, capacity);
+    }
+}
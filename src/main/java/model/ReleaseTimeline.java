@@ -0,0 +1,89 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Immutable, chronologically sorted list of releases.
+ * Each release is identified by a dense int id (its position in the timeline) and release dates are
+ * kept as a sorted array of epoch days, so that lookups by name are O(1) and lookups by date are O(log R).
+ * Being immutable, a timeline can be shared across threads.
+ */
+public final class ReleaseTimeline {
+
+    private final String[] names;
+    private final long[] epochDays;
+    private final Map<String, Integer> ids;
+
+    /**
+     * @param releases releases sorted by ascending release date, with no two releases on the same date
+     */
+    public ReleaseTimeline(List<Map.Entry<String, LocalDate>> releases) {
+        this.names = new String[releases.size()];
+        this.epochDays = new long[releases.size()];
+        Map<String, Integer> idsByName = new HashMap<>();
+        for (int i = 0; i < releases.size(); i++) {
+            names[i] = releases.get(i).getKey();
+            epochDays[i] = releases.get(i).getValue().toEpochDay();
+            if (i > 0 && epochDays[i] <= epochDays[i - 1])
+                throw new IllegalArgumentException("Releases must be sorted by strictly ascending release date");
+            idsByName.put(names[i], i);
+        }
+        this.ids = Collections.unmodifiableMap(idsByName);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the id of the release, or -1 if there is no release with that name
+     */
+    public int idOf(String name) {
+        if (name == null)
+            return -1;
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    public boolean contains(String name) {
+        return name != null && ids.containsKey(name);
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public long epochDayOf(int id) {
+        return epochDays[id];
+    }
+
+    public LocalDate releaseDateOf(int id) {
+        return LocalDate.ofEpochDay(epochDays[id]);
+    }
+
+    /**
+     * @param epochDay a date, as days from the epoch
+     * @return the id of the first release whose date is equal or after the given one,
+     * or -1 if the date is after the latest release
+     */
+    public int findIdByEpochDay(long epochDay) {
+        int low = 0;
+        int high = epochDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < epochDay)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low < epochDays.length ? low : -1;
+    }
+
+    /**
+     * @return the names of the releases, in chronological order
+     */
+    public List<String> names() {
+        return List.of(names);
+    }
+}
@@ -0,0 +1,179 @@
+package controller;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitDiffStoreTest {
+
+    private static final ObjectId SETTINGS = id(100);
+    private static final ObjectId OTHER_SETTINGS = id(101);
+
+    @TempDir
+    Path directory;
+
+    private static ObjectId id(int n) {
+        return ObjectId.fromString(String.format("%040x", n));
+    }
+
+    private static List<DiffPrefetcher.FileDiff> diff(int n) {
+        return List.of(
+                new DiffPrefetcher.FileDiff(new Entry(DiffEntry.ChangeType.ADD, DiffEntry.DEV_NULL, "src/A" + n + ".java",
+                        FileMode.MISSING, FileMode.REGULAR_FILE, ObjectId.zeroId(), id(n)), n, 0),
+                new DiffPrefetcher.FileDiff(new Entry(DiffEntry.ChangeType.MODIFY, "src/B" + n + ".java", "src/B" + n + ".java",
+                        FileMode.REGULAR_FILE, FileMode.EXECUTABLE_FILE, id(n + 1), id(n + 2)), 3, 2 * n));
+    }
+
+    private static final class Entry extends DiffEntry {
+        private Entry(ChangeType changeType, String oldPath, String newPath, FileMode oldMode, FileMode newMode,
+                      ObjectId oldId, ObjectId newId) {
+            this.changeType = changeType;
+            this.oldPath = oldPath;
+            this.newPath = newPath;
+            this.oldMode = oldMode;
+            this.newMode = newMode;
+            this.oldId = AbbreviatedObjectId.fromObjectId(oldId);
+            this.newId = AbbreviatedObjectId.fromObjectId(newId);
+        }
+    }
+
+    private static void assertSameDiff(List<DiffPrefetcher.FileDiff> expected, List<DiffPrefetcher.FileDiff> actual) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            DiffEntry e = expected.get(i).entry();
+            DiffEntry a = actual.get(i).entry();
+            assertEquals(e.getChangeType(), a.getChangeType());
+            assertEquals(e.getOldPath(), a.getOldPath());
+            assertEquals(e.getNewPath(), a.getNewPath());
+            assertEquals(e.getOldMode(), a.getOldMode());
+            assertEquals(e.getNewMode(), a.getNewMode());
+            assertEquals(e.getOldId(), a.getOldId());
+            assertEquals(e.getNewId(), a.getNewId());
+            assertEquals(expected.get(i).linesAdded(), actual.get(i).linesAdded());
+            assertEquals(expected.get(i).linesDeleted(), actual.get(i).linesDeleted());
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    @Test
+    void readsBackTheFlushedDiffs() throws IOException {
+        Path file = directory.resolve("diffs.bin");
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            store.put(null, id(1), diff(1));
+            store.put(id(1), id(2), diff(2));
+            store.flush();
+            store.put(id(2), id(3), diff(3));
+            store.flush();
+            assertSameDiff(diff(2), store.lookup(id(1), id(2)));
+        }
+
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            assertEquals(3, store.size());
+            assertSameDiff(diff(1), store.lookup(null, id(1)));
+            assertSameDiff(diff(2), store.lookup(id(1), id(2)));
+            assertSameDiff(diff(3), store.lookup(id(2), id(3)));
+            assertNull(store.lookup(null, id(2)));
+        }
+    }
+
+    @Test
+    void dropsARecordCutByACrash() throws IOException {
+        Path file = directory.resolve("diffs.bin");
+        long complete;
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            store.put(null, id(1), diff(1));
+            store.flush();
+            complete = Files.size(file);
+            store.put(id(1), id(2), diff(2));
+            store.flush();
+        }
+        long full = Files.size(file);
+
+        // cut in the body, then in the header of the last record
+        for (long size : new long[]{full - 1, complete + 10}) {
+            truncate(file, size);
+            try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+                assertEquals(1, store.size());
+                assertSameDiff(diff(1), store.lookup(null, id(1)));
+                assertNull(store.lookup(id(1), id(2)));
+            }
+        }
+
+        // the cut record is overwritten by the next flush
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            store.put(id(1), id(2), diff(2));
+            store.flush();
+        }
+        assertEquals(full, Files.size(file));
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            assertEquals(2, store.size());
+            assertSameDiff(diff(1), store.lookup(null, id(1)));
+            assertSameDiff(diff(2), store.lookup(id(1), id(2)));
+        }
+    }
+
+    @Test
+    void dropsAFileCutInItsHeader() throws IOException {
+        Path file = directory.resolve("diffs.bin");
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            store.put(null, id(1), diff(1));
+            store.flush();
+        }
+        truncate(file, 12);
+
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            assertEquals(0, store.size());
+            assertNull(store.lookup(null, id(1)));
+            store.put(id(1), id(2), diff(2));
+            store.flush();
+        }
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            assertEquals(1, store.size());
+            assertSameDiff(diff(2), store.lookup(id(1), id(2)));
+        }
+    }
+
+    @Test
+    void emptiesTheStoreWhenTheSettingsChange() throws IOException {
+        Path file = directory.resolve("diffs.bin");
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            store.put(null, id(1), diff(1));
+            store.flush();
+        }
+
+        try (CommitDiffStore store = new CommitDiffStore(file, OTHER_SETTINGS)) {
+            assertEquals(0, store.size());
+            assertNull(store.lookup(null, id(1)));
+            store.put(id(1), id(2), diff(2));
+            store.flush();
+        }
+
+        try (CommitDiffStore store = new CommitDiffStore(file, OTHER_SETTINGS)) {
+            assertEquals(1, store.size());
+            assertNull(store.lookup(null, id(1)));
+            assertSameDiff(diff(2), store.lookup(id(1), id(2)));
+        }
+        try (CommitDiffStore store = new CommitDiffStore(file, SETTINGS)) {
+            assertEquals(0, store.size());
+            assertNull(store.lookup(id(1), id(2)));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package git;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitTableTest {
+
+    @TempDir
+    Path directory;
+
+    private Git git;
+    private Path file;
+    private long time = 1_600_000_000L;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        git = Git.init().setDirectory(directory.resolve("repo").toFile()).call();
+        file = directory.resolve("proj_commits.bin");
+    }
+
+    @AfterEach
+    void tearDown() {
+        git.close();
+    }
+
+    private RevCommit commit(String author, String message) throws Exception {
+        time += 60;
+        PersonIdent ident = new PersonIdent(author, author + "@example.org", new Date(time * 1000), TimeZone.getTimeZone("UTC"));
+        return git.commit().setMessage(message).setAuthor(ident).setCommitter(ident).setAllowEmpty(true).call();
+    }
+
+    @Test
+    void readsBackTheCommitsOfTheLog() throws Exception {
+        RevCommit first = commit("alice", "PROJ-1 first");
+        RevCommit second = commit("bob", "PROJ-2 and OTHER-3, again PROJ-2");
+
+        CommitTable table = CommitTable.open(file, git.getRepository());
+        CommitTable reopened = CommitTable.open(file, git.getRepository());
+
+        for (CommitTable t : List.of(table, reopened)) {
+            assertEquals(2, t.size());
+            assertEquals(second, t.getHead());
+            int firstRow = t.rowOf(first);
+            int secondRow = t.rowOf(second);
+            assertEquals(first, t.getId(firstRow));
+            assertEquals(first.getCommitTime(), t.getCommitTime(firstRow));
+            assertEquals("alice", t.getAuthor(firstRow));
+            assertEquals("bob", t.getAuthor(secondRow));
+            assertArrayEquals(new int[0], t.getParents(firstRow));
+            assertArrayEquals(new int[]{firstRow}, t.getParents(secondRow));
+            assertEquals(List.of("PROJ-2", "OTHER-3"), t.getTicketKeys(secondRow));
+            assertArrayEquals(new int[]{firstRow, secondRow}, t.getRowsByCommitTime());
+        }
+        // HEAD has not moved, so the table is not written again
+        assertEquals(1, GenerationFiles.latest(file));
+    }
+
+    @Test
+    void extendsTheTableWithTheNewCommits() throws Exception {
+        RevCommit first = commit("alice", "PROJ-1 first");
+        CommitTable table = CommitTable.open(file, git.getRepository());
+        RevCommit second = commit("bob", "PROJ-2 second");
+
+        CommitTable extended = CommitTable.open(file, git.getRepository());
+
+        assertEquals(2, extended.size());
+        assertEquals(second, extended.getHead());
+        assertEquals(table.rowOf(first), extended.rowOf(first));
+        int secondRow = extended.rowOf(second);
+        assertArrayEquals(new int[]{extended.rowOf(first)}, extended.getParents(secondRow));
+        assertEquals(List.of("PROJ-2"), extended.getTicketKeys(secondRow));
+        assertEquals(2, GenerationFiles.latest(file));
+    }
+
+    @Test
+    void extendsTheTableWhileTheOldOneIsStillMapped() throws Exception {
+        RevCommit first = commit("alice", "PROJ-1 first");
+        CommitTable mapped = CommitTable.open(file, git.getRepository());
+        commit("bob", "PROJ-2 second");
+
+        CommitTable extended = CommitTable.open(file, git.getRepository());
+
+        // the mapped generation has not been overwritten: the old table still reads its own content
+        assertEquals(1, mapped.size());
+        assertEquals(first, mapped.getId(0));
+        assertEquals(List.of("PROJ-1"), mapped.getTicketKeys(0));
+        assertEquals(2, extended.size());
+        assertTrue(Files.exists(GenerationFiles.pathOf(file, 2)));
+    }
+
+    @Test
+    void rebuildsTheTableAfterARewrittenHistory() throws Exception {
+        RevCommit first = commit("alice", "PROJ-1 first");
+        RevCommit dropped = commit("bob", "PROJ-2 second");
+        CommitTable.open(file, git.getRepository());
+        git.reset().setMode(ResetCommand.ResetType.HARD).setRef(first.name()).call();
+        RevCommit rewritten = commit("carol", "PROJ-3 rewritten");
+
+        CommitTable table = CommitTable.open(file, git.getRepository());
+
+        assertEquals(2, table.size());
+        assertEquals(-1, table.rowOf(dropped));
+        assertEquals(List.of("PROJ-3"), table.getTicketKeys(table.rowOf(rewritten)));
+        assertArrayEquals(new int[]{table.rowOf(first)}, table.getParents(table.rowOf(rewritten)));
+    }
+
+    @Test
+    void rebuildsAnInvalidTable() throws Exception {
+        RevCommit first = commit("alice", "PROJ-1 first");
+        Files.write(GenerationFiles.pathOf(file, 1), new byte[]{1, 2, 3});
+
+        CommitTable table = CommitTable.open(file, git.getRepository());
+
+        assertEquals(1, table.size());
+        assertEquals(first, table.getId(0));
+    }
+}
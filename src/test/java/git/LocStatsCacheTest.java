@@ -0,0 +1,88 @@
+package git;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocStatsCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private static ObjectId id(int n) {
+        return ObjectId.fromString(String.format("%040x", n));
+    }
+
+    @Test
+    void readsBackTheFlushedEntries() throws Exception {
+        Path file = directory.resolve("cache.bin");
+        LocStatsCache cache = new LocStatsCache(file);
+        for (int i = 1; i <= 3000; i++)
+            cache.put(id(i), id(i + 1), i, 2 * i);
+        assertEquals(new LocStatsCache.LocStats(7, 14), cache.lookup(id(7), id(8)));
+        cache.flush();
+
+        LocStatsCache reopened = new LocStatsCache(file);
+        for (int i = 1; i <= 3000; i++)
+            assertEquals(new LocStatsCache.LocStats(i, 2 * i), reopened.lookup(id(i), id(i + 1)));
+        assertNull(reopened.lookup(id(2), id(1)));
+        assertEquals(3000, reopened.getHits());
+        assertEquals(1, reopened.getMisses());
+    }
+
+    @Test
+    void mergesTheEntriesFlushedByAnotherWriter() throws Exception {
+        Path file = directory.resolve("cache.bin");
+        LocStatsCache first = new LocStatsCache(file);
+        LocStatsCache second = new LocStatsCache(file);
+        first.put(id(1), id(2), 1, 0);
+        second.put(id(3), id(4), 3, 0);
+        first.flush();
+        second.flush();
+        first.put(id(5), id(6), 5, 0);
+        first.flush();
+
+        LocStatsCache reopened = new LocStatsCache(file);
+        assertEquals(new LocStatsCache.LocStats(1, 0), reopened.lookup(id(1), id(2)));
+        assertEquals(new LocStatsCache.LocStats(3, 0), reopened.lookup(id(3), id(4)));
+        assertEquals(new LocStatsCache.LocStats(5, 0), reopened.lookup(id(5), id(6)));
+        // the first writer also sees the entries of the second once it has merged them
+        assertEquals(new LocStatsCache.LocStats(3, 0), first.lookup(id(3), id(4)));
+    }
+
+    @Test
+    void flushesWhileAnotherCacheStillMapsTheTable() throws Exception {
+        Path file = directory.resolve("cache.bin");
+        LocStatsCache writer = new LocStatsCache(file);
+        writer.put(id(1), id(2), 1, 0);
+        writer.flush();
+        LocStatsCache reader = new LocStatsCache(file);
+        assertEquals(new LocStatsCache.LocStats(1, 0), reader.lookup(id(1), id(2)));
+
+        writer.put(id(3), id(4), 3, 0);
+        writer.flush();
+
+        // the generation mapped by the reader has not been overwritten
+        assertEquals(new LocStatsCache.LocStats(1, 0), reader.lookup(id(1), id(2)));
+        assertNull(reader.lookup(id(3), id(4)));
+        assertEquals(2, GenerationFiles.latest(file));
+        assertEquals(new LocStatsCache.LocStats(3, 0), new LocStatsCache(file).lookup(id(3), id(4)));
+    }
+
+    @Test
+    void ignoresAnInvalidFile() throws Exception {
+        Path file = directory.resolve("cache.bin");
+        Files.write(GenerationFiles.pathOf(file, 1), new byte[]{1, 2, 3});
+        LocStatsCache cache = new LocStatsCache(file);
+        assertNull(cache.lookup(id(1), id(2)));
+        cache.put(id(1), id(2), 1, 0);
+        cache.flush();
+
+        assertEquals(new LocStatsCache.LocStats(1, 0), new LocStatsCache(file).lookup(id(1), id(2)));
+    }
+}
@@ -0,0 +1,72 @@
+package jira;
+
+import model.JiraTicket;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrieveTicketsIDTest {
+
+    private static final String SEARCH_PAGE = "/jira/search-page.json";
+
+    private static Reader open(String resource) {
+        InputStream is = RetrieveTicketsIDTest.class.getResourceAsStream(resource);
+        assertNotNull(is, resource);
+        return new InputStreamReader(is, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void parsesTheSearchPageAsTheTreeDid() throws IOException {
+        RetrieveTicketsID.Page<JiraTicket> page;
+        try (Reader reader = open(SEARCH_PAGE)) {
+            page = RetrieveTicketsID.parsePage(reader, RetrieveTicketsID::parseTicket);
+        }
+        JSONObject tree;
+        try (Reader reader = open(SEARCH_PAGE)) {
+            tree = new JSONObject(new JSONTokener(reader));
+        }
+
+        assertEquals(tree.getInt("total"), page.total());
+        JSONArray issues = tree.getJSONArray("issues");
+        assertEquals(issues.length(), page.issues().size());
+        for (int i = 0; i < issues.length(); i++) {
+            JiraTicket expected = parseJsonTicket(issues.getJSONObject(i));
+            JiraTicket actual = page.issues().get(i);
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getCreationDate(), actual.getCreationDate());
+            assertEquals(expected.getFixedDate(), actual.getFixedDate());
+            assertEquals(expected.getAffectedVersions(), actual.getAffectedVersions());
+        }
+        assertEquals(List.of("4.3.1", "4.3.2"), page.issues().get(2).getAffectedVersions());
+    }
+
+    /**
+     * The tree-based parsing used before the pull parser.
+     */
+    private static JiraTicket parseJsonTicket(JSONObject ticket) {
+        String key = ticket.get("key").toString();
+        JSONObject fields = ticket.getJSONObject("fields");
+
+        JSONArray versions = fields.getJSONArray("versions");
+        ArrayList<String> parsedVersions = new ArrayList<>();
+        for (int i = 0; i < versions.length(); i++) {
+            JSONObject version = versions.getJSONObject(i);
+            if (version.getBoolean("released"))
+                parsedVersions.add(version.getString("name"));
+        }
+        String creation = fields.getString("created").substring(0, 10);
+        String fix = fields.getString("resolutiondate").substring(0, 10);
+        return new JiraTicket(key, creation, fix, parsedVersions);
+    }
+}
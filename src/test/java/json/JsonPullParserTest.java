@@ -0,0 +1,112 @@
+package json;
+
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonPullParserTest {
+
+    private static JsonPullParser parser(String json) {
+        return new JsonPullParser(new StringReader(json));
+    }
+
+    @Test
+    void skipsNestedValues() throws IOException {
+        JsonPullParser parser = parser("{\"skipped\": {\"a\": [1, {\"b\": [[], {}]}, \"x]}\"], \"c\": null}, \"kept\": \"value\"}");
+        parser.beginObject();
+        assertEquals("skipped", parser.nextName());
+        parser.skipValue();
+        assertEquals("kept", parser.nextName());
+        assertEquals("value", parser.nextString());
+        assertFalse(parser.hasNext());
+        parser.endObject();
+        assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    void skipsScalarValues() throws IOException {
+        JsonPullParser parser = parser("[true, -1.5e3, null, \"a\\\"b\", 7]");
+        parser.beginArray();
+        for (int i = 0; i < 4; i++)
+            parser.skipValue();
+        assertEquals(7, parser.nextInt());
+        parser.endArray();
+    }
+
+    @Test
+    void readsEscapedStrings() throws IOException {
+        JsonPullParser parser = parser("{\"q\\\"uote\": \"a\\\\b\\/c\\n\\t\\r\\b\\f\\\"\", \"u\": \"\\u00e8\\u2013\\uD83D\\uDE00\"}");
+        parser.beginObject();
+        assertEquals("q\"uote", parser.nextName());
+        assertEquals("a\\b/c\n\t\r\b\f\"", parser.nextString());
+        assertEquals("u", parser.nextName());
+        assertEquals("\u00e8\u2013\uD83D\uDE00", parser.nextString());
+        parser.endObject();
+    }
+
+    @Test
+    void readsEmptyArraysAndObjects() throws IOException {
+        JsonPullParser parser = parser("{\"array\": [ ], \"object\": {}}");
+        parser.beginObject();
+        assertEquals("array", parser.nextName());
+        parser.beginArray();
+        assertEquals(JsonPullParser.Token.END_ARRAY, parser.peek());
+        assertFalse(parser.hasNext());
+        parser.endArray();
+        assertEquals("object", parser.nextName());
+        parser.beginObject();
+        assertFalse(parser.hasNext());
+        parser.endObject();
+        parser.endObject();
+        assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    void readsLiterals() throws IOException {
+        JsonPullParser parser = parser("[false, null, 12345678901, \"s\"]");
+        parser.beginArray();
+        assertFalse(parser.nextBoolean());
+        parser.nextNull();
+        assertEquals(12345678901L, parser.nextLong());
+        assertEquals("s", parser.nextString());
+        parser.endArray();
+    }
+
+    @Test
+    void readsANumberAtTheEndOfTheDocument() throws IOException {
+        JsonPullParser parser = parser("42");
+        assertEquals(42, parser.nextInt());
+        assertEquals(JsonPullParser.Token.END_DOCUMENT, parser.peek());
+    }
+
+    @Test
+    void failsOnTruncatedInput() {
+        String json = "{\"a\": [1, {\"b\": \"c\\u00e8\"}], \"d\": true}";
+        for (int length = 0; length < json.length(); length++) {
+            String truncated = json.substring(0, length);
+            assertThrows(JSONException.class, () -> readAll(parser(truncated)), truncated);
+        }
+    }
+
+    @Test
+    void failsOnInvalidInput() {
+        assertThrows(JSONException.class, () -> readAll(parser("[1 2]")));
+        assertThrows(JSONException.class, () -> readAll(parser("{\"a\" 1}")));
+        assertThrows(JSONException.class, () -> readAll(parser("{1: 2}")));
+        assertThrows(JSONException.class, () -> readAll(parser("\"\\u12g4\"")));
+        assertThrows(JSONException.class, () -> readAll(parser("{} {}")));
+    }
+
+    /**
+     * Skips the whole document and checks that nothing follows it.
+     */
+    private static void readAll(JsonPullParser parser) throws IOException {
+        parser.skipValue();
+        if (parser.peek() != JsonPullParser.Token.END_DOCUMENT)
+            fail("Trailing content");
+    }
+}